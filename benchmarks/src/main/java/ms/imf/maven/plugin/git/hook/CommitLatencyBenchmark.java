@@ -0,0 +1,324 @@
+package ms.imf.maven.plugin.git.hook;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import ms.imf.maven.plugin.git.hook.benchmarks.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.BenchmarkParams;
+
+/**
+ * Commits and pushes a change to one module of a synthetic reactor, with hooks installed by the
+ * plugin running in a real Maven build, the one built with the benchmarks. Pushes go to a local
+ * bare repository. Needs git and mvn on the PATH, and the plugin in the local repository.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CommitLatencyBenchmark {
+
+  private static final String PLUGIN_GROUP_ID = "ms.imf";
+  private static final String PLUGIN_ARTIFACT_ID = "git-hook-maven-plugin";
+  private static final int FILES_PER_DIRECTORY = 100;
+
+  /** The number of files of the work tree, spread over the modules */
+  @Param({"1000", "10000", "100000"})
+  private int files;
+
+  /** The number of modules of the reactor */
+  @Param({"1", "10", "100"})
+  private int modules;
+
+  /**
+   * none: no hook installed. noop: hooks running a command doing nothing. maven: hooks running
+   * 'validate' on the reactor. quiet: the maven mode with QUIET output. moduleSteps: a noop step
+   * per module, triggered by its changed paths. stagedFiles: the noop mode, with the staged paths
+   * collected. stagedSnapshot: the noop mode, against the staged snapshot. resultCache: the noop
+   * mode, through the result cache. affectedModules: the maven mode, on the pushed modules.
+   */
+  @Param({
+    "none",
+    "noop",
+    "maven",
+    "quiet",
+    "moduleSteps",
+    "stagedFiles",
+    "stagedSnapshot",
+    "resultCache",
+    "affectedModules"
+  })
+  private String mode;
+
+  private TemporaryDirectory directory;
+  private Path workTree;
+  private Path output;
+  private List<String> installCommand;
+  private int changes;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = new TemporaryDirectory();
+    workTree = Files.createDirectories(directory.path().resolve("work-tree"));
+    output = directory.path().resolve("output.log");
+    Path remote = directory.path().resolve("remote.git");
+    run(directory.path(), "git", "init", "-q", "--bare", remote.toString());
+    run(workTree, "git", "init", "-q");
+    run(workTree, "git", "config", "user.name", "Benchmark");
+    run(workTree, "git", "config", "user.email", "benchmark@example.com");
+    run(workTree, "git", "config", "commit.gpgsign", "false");
+    run(workTree, "git", "remote", "add", "origin", remote.toString());
+
+    String pluginVersion = pluginVersion();
+    writeReactor(pluginVersion);
+    run(workTree, "git", "add", "-A");
+    run(workTree, "git", "commit", "-q", "--no-verify", "-m", "Synthetic reactor");
+    run(workTree, "git", "push", "-q", "--no-verify", "origin", "HEAD:refs/heads/main");
+    run(workTree, "git", "branch", "-q", "--set-upstream-to", "origin/main");
+
+    installCommand = new ArrayList<>(Arrays.asList("mvn", "-B", "-q"));
+    installCommand.addAll(installOptions());
+    installCommand.add("initialize");
+    run(workTree, installCommand.toArray(new String[0]));
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    directory.close();
+  }
+
+  /**
+   * Stages a change of one module, each time the next one. Commits it before a push, without
+   * running the pre-commit hook.
+   */
+  @Setup(Level.Invocation)
+  public void stageChange(BenchmarkParams params) throws Exception {
+    int module = changes % modules + 1;
+    changes++;
+    Path file = workTree.resolve("module-" + module).resolve("src/main/resources/changed.txt");
+    Files.write(file, ("change " + changes + "\n").getBytes(StandardCharsets.UTF_8));
+    run(workTree, "git", "add", "--", workTree.relativize(file).toString());
+    if (params.getBenchmark().endsWith(".push")) {
+      run(workTree, "git", "commit", "-q", "--no-verify", "-m", "Change " + changes);
+    }
+  }
+
+  @Benchmark
+  public void commit() throws Exception {
+    run(workTree, "git", "commit", "-q", "-m", "Change " + changes);
+  }
+
+  /** Pushes a single new commit */
+  @Benchmark
+  public void push() throws Exception {
+    run(workTree, "git", "push", "-q", "origin", "HEAD:refs/heads/main");
+  }
+
+  /** A build of the reactor with the hooks already up to date, as every build runs it */
+  @Benchmark
+  public void install() throws Exception {
+    run(workTree, installCommand.toArray(new String[0]));
+  }
+
+  private List<String> installOptions() {
+    switch (mode) {
+      case "none":
+        return Collections.singletonList("-Dghmp.skip=true");
+      case "noop":
+      case "moduleSteps":
+        return noopCommands();
+      case "maven":
+        return mavenCommands();
+      case "quiet":
+        List<String> quiet = mavenCommands();
+        quiet.add("-Dghmp.hookOutputMode=QUIET");
+        return quiet;
+      case "stagedFiles":
+        List<String> stagedFiles = noopCommands();
+        stagedFiles.add("-Dghmp.preCommitStagedFiles=true");
+        return stagedFiles;
+      case "stagedSnapshot":
+        List<String> stagedSnapshot = noopCommands();
+        stagedSnapshot.add("-Dghmp.preCommitStagedSnapshot=true");
+        return stagedSnapshot;
+      case "resultCache":
+        List<String> resultCache = noopCommands();
+        resultCache.add("-Dghmp.preCommitResultCache=true");
+        resultCache.add("-Dghmp.prePushResultCache=true");
+        return resultCache;
+      case "affectedModules":
+        List<String> affectedModules = mavenCommands();
+        affectedModules.add("-Dghmp.prePushAffectedModules=true");
+        return affectedModules;
+      default:
+        throw new IllegalArgumentException("Unknown mode " + mode);
+    }
+  }
+
+  private static List<String> noopCommands() {
+    return new ArrayList<>(
+        Arrays.asList("-Dghmp.preCommitHookContent=true", "-Dghmp.prePushHookContent=true"));
+  }
+
+  private static List<String> mavenCommands() {
+    return new ArrayList<>(
+        Arrays.asList(
+            "-Dghmp.preCommitCommandMavenPrefix=true",
+            "-Dghmp.preCommitHookContent=validate",
+            "-Dghmp.prePushCommandMavenPrefix=true",
+            "-Dghmp.prePushHookContent=validate"));
+  }
+
+  /**
+   * Writes a root pom declaring the plugin, then the modules, each holding its share of the files
+   * in directories of {@value #FILES_PER_DIRECTORY} files.
+   */
+  private void writeReactor(String pluginVersion) throws IOException {
+    StringBuilder moduleList = new StringBuilder();
+    for (int module = 1; module <= modules; module++) {
+      moduleList.append("    <module>module-").append(module).append("</module>\n");
+    }
+    write(
+        workTree.resolve("pom.xml"),
+        "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+            + "  <modelVersion>4.0.0</modelVersion>\n"
+            + "  <groupId>ms.imf.benchmark</groupId>\n"
+            + "  <artifactId>reactor</artifactId>\n"
+            + "  <version>1.0</version>\n"
+            + "  <packaging>pom</packaging>\n"
+            + "  <modules>\n"
+            + moduleList
+            + "  </modules>\n"
+            + "  <build>\n"
+            + "    <plugins>\n"
+            + "      <plugin>\n"
+            + plugin(pluginVersion)
+            + "        <executions>\n"
+            + "          <execution>\n"
+            + "            <goals>\n"
+            + "              <goal>install-hooks</goal>\n"
+            + "            </goals>\n"
+            + "          </execution>\n"
+            + "        </executions>\n"
+            + "      </plugin>\n"
+            + "    </plugins>\n"
+            + "  </build>\n"
+            + "</project>\n");
+    write(workTree.resolve(".gitignore"), "target/\n");
+
+    for (int module = 1; module <= modules; module++) {
+      Path moduleDirectory = workTree.resolve("module-" + module);
+      String steps =
+          "moduleSteps".equals(mode)
+              ? "    <plugins>\n"
+                  + "      <plugin>\n"
+                  + plugin(pluginVersion)
+                  + "        <configuration>\n"
+                  + "         "
+                  + " <preCommitSteps><step><command>true</command></step></preCommitSteps>\n"
+                  + "          <prePushSteps><step><command>true</command></step></prePushSteps>\n"
+                  + "        </configuration>\n"
+                  + "      </plugin>\n"
+                  + "    </plugins>\n"
+              : "";
+      write(
+          moduleDirectory.resolve("pom.xml"),
+          "<project xmlns=\"http://maven.apache.org/POM/4.0.0\">\n"
+              + "  <modelVersion>4.0.0</modelVersion>\n"
+              + "  <parent>\n"
+              + "    <groupId>ms.imf.benchmark</groupId>\n"
+              + "    <artifactId>reactor</artifactId>\n"
+              + "    <version>1.0</version>\n"
+              + "  </parent>\n"
+              + "  <artifactId>module-"
+              + module
+              + "</artifactId>\n"
+              + "  <build>\n"
+              + steps
+              + "  </build>\n"
+              + "</project>\n");
+      Path resources = moduleDirectory.resolve("src/main/resources");
+      write(resources.resolve("changed.txt"), "change 0\n");
+      for (int file = module - 1; file < files; file += modules) {
+        write(
+            resources.resolve("d" + file / FILES_PER_DIRECTORY).resolve("f" + file + ".txt"),
+            "file " + file + "\n");
+      }
+    }
+  }
+
+  private static String plugin(String pluginVersion) {
+    return "        <groupId>"
+        + PLUGIN_GROUP_ID
+        + "</groupId>\n"
+        + "        <artifactId>"
+        + PLUGIN_ARTIFACT_ID
+        + "</artifactId>\n"
+        + "        <version>"
+        + pluginVersion
+        + "</version>\n";
+  }
+
+  /** The version of the plugin the benchmarks were built with */
+  private static String pluginVersion() throws IOException {
+    String resource =
+        "/META-INF/maven/" + PLUGIN_GROUP_ID + "/" + PLUGIN_ARTIFACT_ID + "/pom.properties";
+    Properties properties = new Properties();
+    try (InputStream inputStream = CommitLatencyBenchmark.class.getResourceAsStream(resource)) {
+      if (inputStream == null) {
+        throw new IOException("Missing " + resource + ", run the shaded benchmarks jar");
+      }
+      properties.load(inputStream);
+    }
+    return properties.getProperty("version");
+  }
+
+  private static void write(Path file, String content) throws IOException {
+    Files.createDirectories(file.getParent());
+    Files.write(file, content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  /** Runs a command, its output going to a file only read when it fails */
+  private void run(Path workingDirectory, String... command)
+      throws IOException, InterruptedException {
+    File outputFile = output.toFile();
+    int exitCode =
+        new ProcessBuilder(command)
+            .directory(workingDirectory.toFile())
+            .redirectErrorStream(true)
+            .redirectOutput(outputFile)
+            .start()
+            .waitFor();
+    if (exitCode != 0) {
+      throw new IOException(
+          String.join(" ", command)
+              + " failed with exit code "
+              + exitCode
+              + ":\n"
+              + new String(Files.readAllBytes(output), StandardCharsets.UTF_8));
+    }
+  }
+}
@@ -0,0 +1,136 @@
+package ms.imf.maven.plugin.git.hook;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.concurrent.TimeUnit;
+import ms.imf.maven.plugin.git.hook.benchmarks.SilentLog;
+import ms.imf.maven.plugin.git.hook.benchmarks.TemporaryDirectory;
+import ms.imf.maven.plugin.git.hook.maven.ExecutableValidation;
+import org.apache.maven.execution.DefaultMavenExecutionRequest;
+import org.apache.maven.execution.DefaultMavenExecutionResult;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.api.Git;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generates the pre-commit hook script of a mojo configured like Maven would, in a repository whose
+ * maven executable is already cached.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HookContentBenchmark {
+
+  /**
+   * command: a plain shell command. maven: a maven command. steps: a maven command followed by two
+   * named steps.
+   */
+  @Param({"command", "maven", "steps"})
+  private String mode;
+
+  private TemporaryDirectory directory;
+  private InstallHooksMojo mojo;
+
+  @Setup
+  public void setUp() throws Exception {
+    directory = new TemporaryDirectory();
+    Git.init().setDirectory(directory.path().toFile()).call().close();
+    System.setProperty("maven.home", fakeMavenHome().toString());
+
+    MavenProject project = new MavenProject();
+    project.setGroupId("ms.imf");
+    project.setArtifactId("benchmark");
+    project.setFile(directory.path().resolve("pom.xml").toFile());
+    MavenSession session =
+        new MavenSession(
+            null, null, new DefaultMavenExecutionRequest(), new DefaultMavenExecutionResult());
+    session.setProjects(Collections.singletonList(project));
+    PluginDescriptor pluginDescriptor = new PluginDescriptor();
+    pluginDescriptor.setGroupId("ms.imf");
+    pluginDescriptor.setArtifactId("git-hook-maven-plugin");
+    pluginDescriptor.setVersion("benchmark");
+
+    mojo = new InstallHooksMojo();
+    mojo.setLog(new SilentLog());
+    set("currentProject", project);
+    set("session", session);
+    set("pluginDescriptor", pluginDescriptor);
+    set("mavenExecutableValidation", ExecutableValidation.LAYOUT);
+    set("hookTelemetry", true);
+    set("hookTelemetryMaxFileSize", 1024);
+    set("preCommitEnvVarToPropagate", new String[] {"JAVA_HOME"});
+    if ("command".equals(mode)) {
+      set("preCommitHookContent", "./scripts/check-format.sh");
+    } else {
+      set("preCommitCommandMavenPrefix", true);
+      set("preCommitHookContent", "spotless:check");
+    }
+    if ("steps".equals(mode)) {
+      set(
+          "preCommitSteps",
+          new HookStep[] {
+            new HookStep("lint", "checkstyle:check", null),
+            new HookStep("shellcheck", "shellcheck scripts/*.sh", false)
+          });
+    }
+    // Resolves and caches the maven executable
+    mojo.generateHookContent(InstallHooksMojo.HookType.PRE_COMMIT);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    directory.close();
+  }
+
+  @Benchmark
+  public String generateHookContent() {
+    return mojo.generateHookContent(InstallHooksMojo.HookType.PRE_COMMIT);
+  }
+
+  /** A maven installation layout, valid for the LAYOUT executable validation */
+  private Path fakeMavenHome() throws IOException {
+    Path mavenHome = directory.path().resolve("maven");
+    Path mvn = Files.createDirectories(mavenHome.resolve("bin")).resolve("mvn");
+    Files.write(mvn, "#!/bin/sh\n".getBytes());
+    if (!mvn.toFile().setExecutable(true)) {
+      throw new IOException("Cannot make " + mvn + " executable");
+    }
+    Files.createFile(
+        Files.createDirectories(mavenHome.resolve("lib")).resolve("maven-core-3.9.6.jar"));
+    return mavenHome;
+  }
+
+  /** Sets a mojo parameter the way Maven injects it */
+  private void set(String name, Object value) throws ReflectiveOperationException {
+    for (Class<?> type = mojo.getClass(); type != null; type = type.getSuperclass()) {
+      try {
+        Field field = type.getDeclaredField(name);
+        field.setAccessible(true);
+        field.set(mojo, value);
+        return;
+      } catch (NoSuchFieldException e) {
+        // Declared by a super class
+      }
+    }
+    throw new NoSuchFieldException(name);
+  }
+}
@@ -0,0 +1,25 @@
+package ms.imf.maven.plugin.git.hook.benchmarks;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks matching the JMH command line, always with the GC profiler so that the
+ * allocation rate is reported next to the time. For instance: 'java -jar
+ * benchmarks/target/benchmarks.jar ExecutableBenchmark -p lines=10000'.
+ */
+public class Benchmarks {
+
+  public static void main(String[] args) throws Exception {
+    CommandLineOptions commandLineOptions = new CommandLineOptions(args);
+    if (commandLineOptions.shouldHelp() || commandLineOptions.shouldList()) {
+      org.openjdk.jmh.Main.main(args);
+      return;
+    }
+    new Runner(
+            new OptionsBuilder().parent(commandLineOptions).addProfiler(GCProfiler.class).build())
+        .run();
+  }
+}
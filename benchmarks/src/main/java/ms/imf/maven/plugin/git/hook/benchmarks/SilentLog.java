@@ -0,0 +1,66 @@
+package ms.imf.maven.plugin.git.hook.benchmarks;
+
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * A log discarding everything, standing for a Maven log without debug output. Messages are still
+ * built by the callers, as they are in a real build.
+ */
+public class SilentLog implements Log {
+
+  @Override
+  public boolean isDebugEnabled() {
+    return false;
+  }
+
+  @Override
+  public void debug(CharSequence content) {}
+
+  @Override
+  public void debug(CharSequence content, Throwable error) {}
+
+  @Override
+  public void debug(Throwable error) {}
+
+  @Override
+  public boolean isInfoEnabled() {
+    return false;
+  }
+
+  @Override
+  public void info(CharSequence content) {}
+
+  @Override
+  public void info(CharSequence content, Throwable error) {}
+
+  @Override
+  public void info(Throwable error) {}
+
+  @Override
+  public boolean isWarnEnabled() {
+    return false;
+  }
+
+  @Override
+  public void warn(CharSequence content) {}
+
+  @Override
+  public void warn(CharSequence content, Throwable error) {}
+
+  @Override
+  public void warn(Throwable error) {}
+
+  @Override
+  public boolean isErrorEnabled() {
+    return false;
+  }
+
+  @Override
+  public void error(CharSequence content) {}
+
+  @Override
+  public void error(CharSequence content, Throwable error) {}
+
+  @Override
+  public void error(Throwable error) {}
+}
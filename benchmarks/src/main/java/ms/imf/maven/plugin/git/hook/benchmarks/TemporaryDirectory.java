@@ -0,0 +1,30 @@
+package ms.imf.maven.plugin.git.hook.benchmarks;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/** A directory created for the benchmark fixtures, deleted with everything below it on close. */
+public class TemporaryDirectory implements AutoCloseable {
+
+  private final Path path;
+
+  public TemporaryDirectory() throws IOException {
+    path = Files.createTempDirectory("ghmp-benchmark").toRealPath();
+  }
+
+  public Path path() {
+    return path;
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (Stream<Path> files = Files.walk(path)) {
+      for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+        Files.delete(file);
+      }
+    }
+  }
+}
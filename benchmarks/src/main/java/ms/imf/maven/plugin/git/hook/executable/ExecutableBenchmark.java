@@ -0,0 +1,89 @@
+package ms.imf.maven.plugin.git.hook.executable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import ms.imf.maven.plugin.git.hook.benchmarks.SilentLog;
+import ms.imf.maven.plugin.git.hook.benchmarks.TemporaryDirectory;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Edits a base script holding the plugin hook call among other lines, the way every installation
+ * configures the hooks base scripts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ExecutableBenchmark {
+
+  private static final String ARGUMENTS = "\"$@\"";
+
+  @Param({"10", "100", "1000", "10000"})
+  private int lines;
+
+  private TemporaryDirectory directory;
+  private Path hookScript;
+  private Executable baseScript;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = new TemporaryDirectory();
+    hookScript = directory.path().resolve("benchmark.git-hook.pre-commit.sh");
+    Path baseScriptFile = directory.path().resolve("pre-commit");
+    List<String> content = new ArrayList<>();
+    content.add("#!/bin/bash");
+    for (int i = 1; i < lines; i++) {
+      content.add("echo \"line " + i + "\"");
+    }
+    Files.write(baseScriptFile, content, StandardCharsets.UTF_8);
+    baseScript = new ExecutableManager(SilentLog::new).getOrCreateExecutableScript(baseScriptFile);
+    baseScript.appendCommandCall(hookScript.toString(), ARGUMENTS);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    directory.close();
+  }
+
+  /** The call is already there: the script is only read */
+  @Benchmark
+  public Executable appendExistingCommandCall() throws IOException {
+    return baseScript.appendCommandCall(hookScript.toString(), ARGUMENTS);
+  }
+
+  /** The call is removed, then appended back, by two separate edits */
+  @Benchmark
+  public Executable removeThenAppendCommandCall() throws IOException {
+    return baseScript
+        .removeCommandCall(hookScript.toString(), ARGUMENTS)
+        .appendCommandCall(hookScript.toString(), ARGUMENTS);
+  }
+
+  /** What an installation does: the call is removed, then appended back, in a single batch */
+  @Benchmark
+  public boolean editCommandCall() throws IOException {
+    return baseScript
+        .edit()
+        .removeCommandCall(hookScript.toString(), ARGUMENTS)
+        .appendCommandCall(hookScript.toString(), ARGUMENTS)
+        .apply();
+  }
+}
@@ -0,0 +1,76 @@
+package ms.imf.maven.plugin.git.hook.git;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.concurrent.TimeUnit;
+import ms.imf.maven.plugin.git.hook.benchmarks.SilentLog;
+import ms.imf.maven.plugin.git.hook.benchmarks.TemporaryDirectory;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.api.errors.GitAPIException;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Resolves the git layout from a directory nested below the work tree root. */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class GitLayoutResolverBenchmark {
+
+  /** The number of directories between the work tree root and the resolved directory */
+  @Param({"0", "10", "50"})
+  private int depth;
+
+  private final GitLayoutResolver resolver = new GitLayoutResolver(SilentLog::new);
+
+  private TemporaryDirectory directory;
+  private Path nestedDirectory;
+  private Path config;
+  private long configModificationTime;
+
+  @Setup
+  public void setUp() throws IOException, GitAPIException {
+    directory = new TemporaryDirectory();
+    Git.init().setDirectory(directory.path().toFile()).call().close();
+    nestedDirectory = directory.path();
+    for (int i = 0; i < depth; i++) {
+      nestedDirectory = nestedDirectory.resolve("module-" + i);
+    }
+    Files.createDirectories(nestedDirectory);
+    config = directory.path().resolve(".git/config");
+    configModificationTime = Files.getLastModifiedTime(config).toMillis();
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    directory.close();
+  }
+
+  /** The layout was resolved by a previous execution and the repository files did not change */
+  @Benchmark
+  public GitLayout resolveMemoized() {
+    return resolver.resolve(nestedDirectory);
+  }
+
+  /** The git config changed since the previous execution, so JGit looks the layout up again */
+  @Benchmark
+  public GitLayout resolveAfterConfigChange() throws IOException {
+    configModificationTime += 1000;
+    Files.setLastModifiedTime(config, FileTime.fromMillis(configModificationTime));
+    return resolver.resolve(nestedDirectory);
+  }
+}
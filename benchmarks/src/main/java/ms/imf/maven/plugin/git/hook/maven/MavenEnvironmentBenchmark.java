@@ -0,0 +1,77 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import java.util.function.UnaryOperator;
+import ms.imf.maven.plugin.git.hook.benchmarks.SilentLog;
+import ms.imf.maven.plugin.git.hook.benchmarks.TemporaryDirectory;
+import ms.imf.maven.plugin.git.hook.executable.CommandRunner;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolves the maven executable with a command runner answering immediately, so that only the
+ * plugin's own overhead is measured: candidates, concurrent validation and the executable cache.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MavenEnvironmentBenchmark {
+
+  private static final CommandRunner STUB_COMMAND_RUNNER =
+      (workingDir, environment, timeout, command) -> "Apache Maven 3.9.6";
+
+  private TemporaryDirectory directory;
+  private UnaryOperator<String> systemProperties;
+  private Path cacheFile;
+
+  @Setup
+  public void setUp() throws IOException {
+    directory = new TemporaryDirectory();
+    Path mavenHome = directory.path().resolve("maven");
+    systemProperties = name -> "maven.home".equals(name) ? mavenHome.toString() : null;
+    cacheFile = directory.path().resolve("maven-executable.cache");
+    cachedEnvironment().getMavenExecutable(false);
+  }
+
+  @TearDown
+  public void tearDown() throws IOException {
+    directory.close();
+  }
+
+  /** Every candidate is validated, as on the first build of a repository */
+  @Benchmark
+  public Path getMavenExecutableUncached() {
+    return new MavenEnvironment(SilentLog::new, systemProperties, STUB_COMMAND_RUNNER)
+        .getMavenExecutable(false);
+  }
+
+  /** The executable comes from the cache file, as on every other build */
+  @Benchmark
+  public Path getMavenExecutableCached() {
+    return cachedEnvironment().getMavenExecutable(false);
+  }
+
+  private MavenEnvironment cachedEnvironment() {
+    return new MavenEnvironment(
+        SilentLog::new,
+        systemProperties,
+        System::getenv,
+        STUB_COMMAND_RUNNER,
+        cacheFile,
+        ExecutableValidation.COMMAND);
+  }
+}
@@ -1,10 +1,10 @@
 package ms.imf.maven.plugin.git.hook;
 
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
+import ms.imf.maven.plugin.git.hook.git.GitLayout;
+import ms.imf.maven.plugin.git.hook.git.GitLayoutResolver;
 import org.apache.maven.plugin.AbstractMojo;
 import org.apache.maven.plugins.annotations.Parameter;
 import org.apache.maven.project.MavenProject;
@@ -15,10 +15,17 @@ import org.apache.maven.project.MavenProject;
 public abstract class AbstractMavenGitHookMojo extends AbstractMojo {
 
   protected static final String HOOKS_DIR = "hooks";
+  protected static final String PLUGIN_DIR = "git-hook-maven-plugin";
 
   @Parameter(readonly = true, defaultValue = "${project}")
   private MavenProject currentProject;
 
+  private final GitLayoutResolver gitLayoutResolver = new GitLayoutResolver(this::getLog);
+
+  protected final MavenProject currentProject() {
+    return currentProject;
+  }
+
   protected final boolean isExecutionRoot() {
     return currentProject.isExecutionRoot();
   }
@@ -35,9 +42,22 @@ public abstract class AbstractMavenGitHookMojo extends AbstractMojo {
     return currentProject.getBasedir().toPath();
   }
 
+  protected final GitLayout gitLayout() {
+    return gitLayoutResolver.resolve(gitBaseDir());
+  }
+
+  /** The hooks directory, which may not exist yet */
+  protected final Path hooksDirectory() {
+    return gitLayout().hooksDirectory();
+  }
+
+  /** The directory holding the plugin's own state, which may not exist yet */
+  protected final Path pluginDirectory() {
+    return gitLayout().commonDirectory().resolve(PLUGIN_DIR);
+  }
+
   protected final Path getOrCreateHooksDirectory() {
-    Path gitDir = findGitDirectory();
-    Path hooksDir = gitDir.resolve(HOOKS_DIR);
+    Path hooksDir = hooksDirectory();
     try {
       Files.createDirectories(hooksDir);
     } catch (IOException e) {
@@ -45,34 +65,4 @@ public abstract class AbstractMavenGitHookMojo extends AbstractMojo {
     }
     return hooksDir;
   }
-
-  private Path findGitDirectory() {
-    Path currentDir = gitBaseDir();
-    while (currentDir != null) {
-      Path gitDir = currentDir.resolve(".git");
-      if (Files.exists(gitDir)) {
-        if (Files.isDirectory(gitDir)) {
-          return gitDir;
-        } else {
-          // Handle git worktree case - .git file contains path to actual git dir
-          try {
-            byte[] bytes = Files.readAllBytes(gitDir);
-            String content = new String(bytes, StandardCharsets.UTF_8).trim();
-            if (content.startsWith("gitdir: ")) {
-              String gitDirPath = content.substring(8);
-              Path actualGitDir = Paths.get(gitDirPath);
-              if (!actualGitDir.isAbsolute()) {
-                actualGitDir = currentDir.resolve(actualGitDir);
-              }
-              return actualGitDir;
-            }
-          } catch (IOException e) {
-            throw new MavenGitHookException("Failed to read .git file: " + gitDir, e);
-          }
-        }
-      }
-      currentDir = currentDir.getParent();
-    }
-    throw new MavenGitHookException("Could not find .git directory");
-  }
 }
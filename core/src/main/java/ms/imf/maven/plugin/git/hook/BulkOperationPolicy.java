@@ -0,0 +1,17 @@
+package ms.imf.maven.plugin.git.hook;
+
+/**
+ * What a hook does while git commits in bulk: during a rebase, am, cherry-pick, revert or merge, or
+ * while the bulk operation marker environment variable is set.
+ */
+public enum BulkOperationPolicy {
+  /** Runs the hook for every commit, as usual. */
+  RUN,
+  /** Skips the hook. */
+  SKIP,
+  /**
+   * Skips the hook, then runs it once on every change of the operation: from the post-rewrite hook
+   * at the end of a rebase, otherwise on the next regular run of the hook.
+   */
+  DEFER
+}
@@ -0,0 +1,163 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static java.util.Optional.ofNullable;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import ms.imf.maven.plugin.git.hook.git.GitLayout;
+import org.apache.maven.execution.MavenSession;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.notes.Note;
+import org.eclipse.jgit.notes.NoteMap;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.eclipse.jgit.revwalk.RevWalk;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+
+/**
+ * Looks for a note recording that the pre-push hook, configured like this build, already verified
+ * the tree of HEAD. The notes must have been fetched, e.g. with 'git fetch origin
+ * refs/notes/git-hook-maven-plugin:refs/notes/git-hook-maven-plugin'. Sets the ghmp.verified
+ * property of the reactor projects, and the skip properties when the note matches, so that the rest
+ * of the build skips the work the hook did. Meant to run first, e.g. 'mvn
+ * git-hook:check-verification-note verify'.
+ */
+@Mojo(name = "check-verification-note", threadSafe = true)
+public class CheckVerificationNoteMojo extends AbstractMavenGitHookMojo {
+
+  private static final String VERIFIED_PROPERTY = "ghmp.verified";
+
+  @Parameter(readonly = true, defaultValue = "${plugin}")
+  private PluginDescriptor pluginDescriptor;
+
+  @Parameter(readonly = true, defaultValue = "${session}")
+  private MavenSession session;
+
+  /** The notes ref holding the verification notes */
+  @Parameter(property = "ghmp.verificationNotesRef", defaultValue = VerificationNote.DEFAULT_REF)
+  private String verificationNotesRef;
+
+  /**
+   * The properties set to true when a note matches, e.g. skipTests. They are set as user
+   * properties, and on every reactor project.
+   */
+  @Parameter(property = "ghmp.verifiedSkipProperties")
+  private String[] verifiedSkipProperties;
+
+  public void execute() throws MojoExecutionException {
+    if (!isExecutionRoot()) {
+      getLog().debug("Not in execution root. Do not execute.");
+      return;
+    }
+
+    List<MavenProject> projects =
+        ofNullable(session.getAllProjects()).orElseGet(session::getProjects);
+    String fingerprint =
+        VerificationNote.fingerprint(
+            pluginDescriptor.getId(),
+            projects,
+            InstallHooksMojo.HookType.PRE_PUSH.getName(),
+            VerificationNote.PRE_PUSH_PARAMETER_PREFIX,
+            session.getUserProperties());
+    VerificationNote note;
+    try {
+      note = findNote(fingerprint);
+    } catch (IOException e) {
+      throw new MojoExecutionException("Failed to read the verification notes", e);
+    }
+
+    setProperty(projects, VERIFIED_PROPERTY, String.valueOf(note != null));
+    if (note == null) {
+      return;
+    }
+    if (verifiedSkipProperties != null) {
+      for (String property : verifiedSkipProperties) {
+        if (property != null && !property.trim().isEmpty()) {
+          setProperty(projects, property.trim(), "true");
+        }
+      }
+    }
+  }
+
+  /** The note recording a verification of the HEAD tree with this configuration, if any */
+  private VerificationNote findNote(String fingerprint) throws IOException {
+    GitLayout gitLayout = gitLayout();
+    try (Repository repository =
+            new FileRepositoryBuilder()
+                .setGitDir(gitLayout.commonDirectory().toFile())
+                .setMustExist(true)
+                .build();
+        RevWalk revWalk = new RevWalk(repository)) {
+      ObjectId head = resolveHead(gitLayout, repository);
+      if (head == null) {
+        getLog().info("No commit to look for a verification note on");
+        return null;
+      }
+      RevCommit commit = revWalk.parseCommit(head);
+      String tree = commit.getTree().name();
+      ObjectId notesCommit = repository.resolve(verificationNotesRef);
+      if (notesCommit == null) {
+        getLog().info("No verification notes in " + verificationNotesRef);
+        return null;
+      }
+      Note note =
+          NoteMap.read(revWalk.getObjectReader(), revWalk.parseCommit(notesCommit)).getNote(commit);
+      if (note == null) {
+        getLog().info("No verification note of " + commit.name() + " in " + verificationNotesRef);
+        return null;
+      }
+      String content =
+          new String(repository.open(note.getData()).getBytes(), StandardCharsets.UTF_8);
+      for (VerificationNote record : VerificationNote.parse(content)) {
+        if (record.verifies(InstallHooksMojo.HookType.PRE_PUSH.getName(), tree, fingerprint)) {
+          getLog()
+              .info(
+                  "The pre-push hook already verified the tree "
+                      + tree
+                      + " of "
+                      + commit.name()
+                      + ", in "
+                      + record.durationMillis() / 1000
+                      + "s");
+          return record;
+        }
+      }
+      getLog()
+          .info(
+              "The verification note of "
+                  + commit.name()
+                  + " is for another tree or another pre-push configuration");
+      return null;
+    }
+  }
+
+  /** HEAD belongs to the work tree, which may be a linked one */
+  private ObjectId resolveHead(GitLayout gitLayout, Repository repository) throws IOException {
+    Path headFile = gitLayout.gitDirectory().resolve(Constants.HEAD);
+    String head =
+        Files.isRegularFile(headFile)
+            ? new String(Files.readAllBytes(headFile), StandardCharsets.UTF_8).trim()
+            : Constants.HEAD;
+    if (head.startsWith("ref:")) {
+      return repository.resolve(head.substring("ref:".length()).trim());
+    }
+    return ObjectId.isId(head) ? ObjectId.fromString(head) : repository.resolve(head);
+  }
+
+  private void setProperty(List<MavenProject> projects, String name, String value) {
+    getLog().debug("Setting " + name + "=" + value);
+    session.getUserProperties().setProperty(name, value);
+    for (MavenProject project : projects) {
+      project.getProperties().setProperty(name, value);
+    }
+  }
+}
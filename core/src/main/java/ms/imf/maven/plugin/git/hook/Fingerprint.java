@@ -0,0 +1,75 @@
+package ms.imf.maven.plugin.git.hook;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Accumulates named values into a SHA-256 digest. Each value is framed by its key so that
+ * consecutive values can never be confused with each other.
+ */
+public final class Fingerprint {
+
+  private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+  private final MessageDigest digest = newDigest();
+
+  public Fingerprint add(String key, Object value) {
+    update(key);
+    update(value == null ? null : String.valueOf(value));
+    return this;
+  }
+
+  public Fingerprint add(String key, Object[] values) {
+    return add(key, values == null ? null : Arrays.asList(values));
+  }
+
+  /** Hexadecimal digest of everything added so far */
+  public String toHex() {
+    try {
+      return hex(((MessageDigest) digest.clone()).digest());
+    } catch (CloneNotSupportedException e) {
+      throw new MavenGitHookException(e);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return toHex();
+  }
+
+  /** Hexadecimal SHA-256 digest of the given bytes */
+  public static String sha256(byte[] bytes) {
+    return hex(newDigest().digest(bytes));
+  }
+
+  private void update(String value) {
+    if (value == null) {
+      digest.update((byte) 0);
+      return;
+    }
+    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+    digest.update((byte) 1);
+    digest.update(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
+    digest.update((byte) ':');
+    digest.update(bytes);
+  }
+
+  private static String hex(byte[] bytes) {
+    char[] chars = new char[bytes.length * 2];
+    for (int i = 0; i < bytes.length; i++) {
+      chars[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+      chars[i * 2 + 1] = HEX[bytes[i] & 0xF];
+    }
+    return new String(chars);
+  }
+
+  private static MessageDigest newDigest() {
+    try {
+      return MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new MavenGitHookException(e);
+    }
+  }
+}
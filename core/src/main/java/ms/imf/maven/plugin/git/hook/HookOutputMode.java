@@ -0,0 +1,12 @@
+package ms.imf.maven.plugin.git.hook;
+
+/** Where the output of the hook commands goes. */
+public enum HookOutputMode {
+  /** Streams the output to the git client, as the commands print it. */
+  STREAM,
+  /**
+   * Writes the output to a log file under the plugin directory. The git client only gets a one-line
+   * summary with the duration, and the last lines of the output when the hook fails.
+   */
+  QUIET
+}
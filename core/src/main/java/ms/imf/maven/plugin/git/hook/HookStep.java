@@ -0,0 +1,100 @@
+package ms.imf.maven.plugin.git.hook;
+
+/**
+ * A named command run by a hook, next to the other steps of the hook. Configured as:
+ *
+ * <pre>
+ * &lt;preCommitSteps&gt;
+ *   &lt;step&gt;
+ *     &lt;name&gt;lint&lt;/name&gt;
+ *     &lt;command&gt;spotless:check&lt;/command&gt;
+ *     &lt;mavenPrefix&gt;true&lt;/mavenPrefix&gt;
+ *     &lt;timeout&gt;120&lt;/timeout&gt;
+ *     &lt;includes&gt;
+ *       &lt;include&gt;**&#47;*.java&lt;/include&gt;
+ *     &lt;/includes&gt;
+ *   &lt;/step&gt;
+ * &lt;/preCommitSteps&gt;
+ * </pre>
+ */
+public class HookStep {
+
+  /** The name printed with the step output */
+  private String name;
+
+  /** The command to execute, as maven arguments in Maven mode */
+  private String command;
+
+  /** True to run the command through maven. Defaults to the hook command maven prefix. */
+  private Boolean mavenPrefix;
+
+  /** The time in seconds after which the step is killed and fails. None by default. */
+  private Integer timeout;
+
+  /** The time in seconds after which the hook warns that the step is still running */
+  private Integer timeBudget;
+
+  /**
+   * Globs of the changed paths triggering the step. '*' also matches '/', and '**&#47;' matches any
+   * directory depth. The step runs on any change when empty.
+   */
+  private String[] includes;
+
+  /** Globs of the changed paths never triggering the step */
+  private String[] excludes;
+
+  public HookStep() {}
+
+  HookStep(String name, String command, Boolean mavenPrefix) {
+    this(name, command, mavenPrefix, null, null);
+  }
+
+  HookStep(String name, String command, Boolean mavenPrefix, Integer timeout, Integer timeBudget) {
+    this(name, command, mavenPrefix, timeout, timeBudget, null, null);
+  }
+
+  HookStep(
+      String name,
+      String command,
+      Boolean mavenPrefix,
+      Integer timeout,
+      Integer timeBudget,
+      String[] includes,
+      String[] excludes) {
+    this.name = name;
+    this.command = command;
+    this.mavenPrefix = mavenPrefix;
+    this.timeout = timeout;
+    this.timeBudget = timeBudget;
+    this.includes = includes;
+    this.excludes = excludes;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public String getCommand() {
+    return command;
+  }
+
+  public Boolean getMavenPrefix() {
+    return mavenPrefix;
+  }
+
+  public Integer getTimeout() {
+    return timeout;
+  }
+
+  public Integer getTimeBudget() {
+    return timeBudget;
+  }
+
+  public String[] getIncludes() {
+    return includes;
+  }
+
+  public String[] getExcludes() {
+    return excludes;
+  }
+}
@@ -1,32 +1,59 @@
 package ms.imf.maven.plugin.git.hook;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.util.Objects.requireNonNull;
 import static java.util.Optional.ofNullable;
 
+import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
+import java.util.EnumMap;
 import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import ms.imf.maven.plugin.git.hook.executable.Executable;
 import ms.imf.maven.plugin.git.hook.executable.ExecutableManager;
+import ms.imf.maven.plugin.git.hook.maven.ExecutableValidation;
+import ms.imf.maven.plugin.git.hook.maven.LocalArtifacts;
 import ms.imf.maven.plugin.git.hook.maven.MavenEnvironment;
+import ms.imf.maven.plugin.git.hook.maven.OfflineMode;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.maven.artifact.Artifact;
+import org.apache.maven.execution.MavenSession;
 import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.descriptor.PluginDescriptor;
 import org.apache.maven.plugin.logging.Log;
 import org.apache.maven.plugins.annotations.LifecyclePhase;
 import org.apache.maven.plugins.annotations.Mojo;
 import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
 
 /**
- * Installs git hooks on each initialization. Hooks are always overridden in case of changes in:
+ * Installs git hooks on each initialization. Hooks are overridden in case of changes in:
  *
  * <ul>
  *   <li>maven installation
  *   <li>plugin structure
+ *   <li>hook configuration
+ *   <li>installed files
  * </ul>
+ *
+ * Otherwise, the installation is a no-op that leaves the file system untouched.
  */
 @Mojo(name = "install-hooks", defaultPhase = LifecyclePhase.INITIALIZE, threadSafe = true)
 public class InstallHooksMojo extends AbstractMavenGitHookMojo {
@@ -39,7 +66,15 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
         installHooksMojo -> installHooksMojo.preCommitHookContent,
         mojo -> mojo.preCommitCommandMavenPrefix,
         mojo -> mojo.preCommitEnvVarToPropagate,
-        mojo -> mojo.preCommitPropertiesToPropagate),
+        mojo -> mojo.preCommitPropertiesToPropagate,
+        mojo -> mojo.preCommitMavenDaemon,
+        mojo -> mojo.preCommitResultCache,
+        mojo -> mojo.preCommitSteps,
+        mojo -> mojo.preCommitTimeout,
+        mojo -> mojo.preCommitTimeBudget,
+        mojo -> mojo.preCommitIncludes,
+        mojo -> mojo.preCommitExcludes,
+        mojo -> mojo.preCommitBulkOperationPolicy),
     PRE_PUSH(
         "pre-push",
         BASE_PLUGIN_PRE_PUSH_HOOK,
@@ -47,7 +82,15 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
         mojo -> mojo.prePushHookContent,
         mojo -> mojo.prePushCommandMavenPrefix,
         mojo -> mojo.prePushEnvVarToPropagate,
-        mojo -> mojo.prePushPropertiesToPropagate),
+        mojo -> mojo.prePushPropertiesToPropagate,
+        mojo -> mojo.prePushMavenDaemon,
+        mojo -> mojo.prePushResultCache,
+        mojo -> mojo.prePushSteps,
+        mojo -> mojo.prePushTimeout,
+        mojo -> mojo.prePushTimeBudget,
+        mojo -> mojo.prePushIncludes,
+        mojo -> mojo.prePushExcludes,
+        mojo -> mojo.prePushBulkOperationPolicy),
     POST_COMMIT(
         "post-commit",
         BASE_PLUGIN_POST_COMMIT_HOOK,
@@ -55,7 +98,15 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
         mojo -> mojo.postCommitHookContent,
         mojo -> mojo.postCommitCommandMavenPrefix,
         mojo -> mojo.postCommitEnvVarToPropagate,
-        mojo -> mojo.postCommitPropertiesToPropagate);
+        mojo -> mojo.postCommitPropertiesToPropagate,
+        mojo -> mojo.postCommitMavenDaemon,
+        mojo -> mojo.postCommitResultCache,
+        mojo -> mojo.postCommitSteps,
+        mojo -> mojo.postCommitTimeout,
+        mojo -> mojo.postCommitTimeBudget,
+        mojo -> mojo.postCommitIncludes,
+        mojo -> mojo.postCommitExcludes,
+        mojo -> mojo.postCommitBulkOperationPolicy);
 
     private final String name;
     private final String pluginHookFile;
@@ -64,6 +115,14 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
     private final Function<InstallHooksMojo, Boolean> commandMavenPrefixGetter;
     private final Function<InstallHooksMojo, String[]> envVarToPropagateGetter;
     private final Function<InstallHooksMojo, String[]> propertiesToPropagateGetter;
+    private final Function<InstallHooksMojo, Boolean> mavenDaemonGetter;
+    private final Function<InstallHooksMojo, Boolean> resultCacheGetter;
+    private final Function<InstallHooksMojo, HookStep[]> stepsGetter;
+    private final Function<InstallHooksMojo, Integer> timeoutGetter;
+    private final Function<InstallHooksMojo, Integer> timeBudgetGetter;
+    private final Function<InstallHooksMojo, String[]> includesGetter;
+    private final Function<InstallHooksMojo, String[]> excludesGetter;
+    private final Function<InstallHooksMojo, BulkOperationPolicy> bulkOperationPolicyGetter;
 
     HookType(
         String name,
@@ -72,7 +131,15 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
         Function<InstallHooksMojo, String> hookContentGetter,
         Function<InstallHooksMojo, Boolean> commandMavenPrefixGetter,
         Function<InstallHooksMojo, String[]> envVarToPropagateGetter,
-        Function<InstallHooksMojo, String[]> propertiesToPropagateGetter) {
+        Function<InstallHooksMojo, String[]> propertiesToPropagateGetter,
+        Function<InstallHooksMojo, Boolean> mavenDaemonGetter,
+        Function<InstallHooksMojo, Boolean> resultCacheGetter,
+        Function<InstallHooksMojo, HookStep[]> stepsGetter,
+        Function<InstallHooksMojo, Integer> timeoutGetter,
+        Function<InstallHooksMojo, Integer> timeBudgetGetter,
+        Function<InstallHooksMojo, String[]> includesGetter,
+        Function<InstallHooksMojo, String[]> excludesGetter,
+        Function<InstallHooksMojo, BulkOperationPolicy> bulkOperationPolicyGetter) {
       this.name = name;
       this.pluginHookFile = pluginHookFile;
       this.baseScript = baseScript;
@@ -80,6 +147,14 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
       this.commandMavenPrefixGetter = commandMavenPrefixGetter;
       this.envVarToPropagateGetter = envVarToPropagateGetter;
       this.propertiesToPropagateGetter = propertiesToPropagateGetter;
+      this.mavenDaemonGetter = mavenDaemonGetter;
+      this.resultCacheGetter = resultCacheGetter;
+      this.stepsGetter = stepsGetter;
+      this.timeoutGetter = timeoutGetter;
+      this.timeBudgetGetter = timeBudgetGetter;
+      this.includesGetter = includesGetter;
+      this.excludesGetter = excludesGetter;
+      this.bulkOperationPolicyGetter = bulkOperationPolicyGetter;
     }
 
     public String getName() {
@@ -101,9 +176,45 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
   private static final String PRE_PUSH_HOOK_BASE_SCRIPT = "pre-push";
   private static final String BASE_PLUGIN_POST_COMMIT_HOOK = "git-hook.post-commit.sh";
   private static final String POST_COMMIT_HOOK_BASE_SCRIPT = "post-commit";
+  private static final String MANIFEST_FILE = "git-hook.manifest";
+  private static final String RUNTIME_FILE = "git-hook.runtime.sh";
+  private static final String RUNTIME_RESOURCE = "git-hook-runtime.sh";
+  private static final String HOOK_ARGUMENTS = "\"$@\"";
+  private static final String MAVEN_EXECUTABLE_CACHE_FILE = "maven-executable.cache";
+  private static final String MAVEN_DAEMON_WARM_UP_LOG_FILE = "mvnd-warm-up.log";
+  private static final long MAVEN_DAEMON_WARM_UP_INTERVAL_MILLIS = TimeUnit.MINUTES.toMillis(10);
+  private static final String PHASE_TIMING_REPORT_FILE = "git-hook-install-timing.json";
+  private static final String INSTALL_STAMP_FILE = "git-hook-install.stamp";
+  private static final String ISOLATED_BUILD_OUTPUT_DIR = "build";
+  private static final String POST_REWRITE_HOOK_BASE_SCRIPT = "post-rewrite";
+  private static final String SNAPSHOT_DIR = "snapshot";
+  private static final String STAGED_SNAPSHOT_ENV_VAR = "GHMP_STAGED_SNAPSHOT";
+  private static final List<String> REINSTALL_HOOK_BASE_SCRIPTS =
+      Arrays.asList("post-checkout", "post-merge");
 
   private final ExecutableManager executableManager = new ExecutableManager(this::getLog);
-  private final MavenEnvironment mavenEnvironment = new MavenEnvironment(this::getLog);
+  private final PhaseTimer phaseTimer = new PhaseTimer();
+  private MavenEnvironment mavenEnvironment;
+  private Boolean hooksRunOffline;
+  private String buildFilesFingerprint;
+  private final Map<HookType, List<ModuleHookStep>> moduleSteps = new EnumMap<>(HookType.class);
+
+  @Parameter(readonly = true, defaultValue = "${plugin}")
+  private PluginDescriptor pluginDescriptor;
+
+  @Parameter(readonly = true, defaultValue = "${session}")
+  private MavenSession session;
+
+  /**
+   * True to install post-checkout and post-merge hooks reinstalling the hooks when a branch switch
+   * or a merge changes a pom or a .mvn file. Builds then only compare the build files to the ones
+   * of the last installation, without looking at the installed hooks.
+   */
+  @Parameter(property = "ghmp.reinstallOnCheckout", defaultValue = "false")
+  private boolean reinstallOnCheckout;
+
+  @Parameter(readonly = true, defaultValue = "${project.build.directory}")
+  private File buildDirectory;
 
   /** Skip execution of this goal */
   @Parameter(property = "ghmp.skip", defaultValue = "false")
@@ -123,6 +234,149 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
   @Parameter(property = "ghmp.debug", defaultValue = "false")
   private boolean debug;
 
+  /**
+   * How maven executable candidates are validated. COMMAND runs each candidate with '--version'.
+   * LAYOUT only inspects the installation files, without starting any JVM. The resolved executable
+   * is cached under the git directory either way.
+   */
+  @Parameter(property = "ghmp.mavenExecutableValidation", defaultValue = "COMMAND")
+  private ExecutableValidation mavenExecutableValidation;
+
+  /**
+   * Additional arguments passed to the Maven Daemon client by the hooks running through it, e.g.
+   * '-Dmvnd.threads=4'. They are not passed when falling back to mvn.
+   */
+  @Parameter(property = "ghmp.mavenDaemonArgs")
+  private String[] mavenDaemonArgs;
+
+  /**
+   * True to start a Maven Daemon in the background on installation when a hook runs through it, so
+   * that the first hook after a reboot finds a warm daemon. The warm-up runs at most every 10
+   * minutes and logs to the plugin directory.
+   */
+  @Parameter(property = "ghmp.mavenDaemonWarmUp", defaultValue = "true")
+  private boolean mavenDaemonWarmUp;
+
+  /** The number of days a hook result stays in the result cache without being used */
+  @Parameter(property = "ghmp.resultCacheMaxAgeDays", defaultValue = "7")
+  private int resultCacheMaxAgeDays;
+
+  /**
+   * The maximum size of the result cache in megabytes. The least recently used results are evicted
+   * beyond it.
+   */
+  @Parameter(property = "ghmp.resultCacheMaxSize", defaultValue = "64")
+  private int resultCacheMaxSize;
+
+  /**
+   * The maximum number of steps of a hook running concurrently. 0 to use the number of available
+   * processors, 1 to run steps serially.
+   */
+  @Parameter(property = "ghmp.hookStepsParallelism", defaultValue = "0")
+  private int hookStepsParallelism;
+
+  /**
+   * True to record the duration and exit code of each hook run, and of each of its steps, under the
+   * plugin directory. The 'stats' goal summarizes them.
+   */
+  @Parameter(property = "ghmp.hookTelemetry", defaultValue = "true")
+  private boolean hookTelemetry;
+
+  /**
+   * The size in kilobytes beyond which the hook telemetry file is rotated. The 3 previous files are
+   * kept.
+   */
+  @Parameter(property = "ghmp.hookTelemetryMaxFileSize", defaultValue = "1024")
+  private int hookTelemetryMaxFileSize;
+
+  /**
+   * True to tune the Maven commands of the hooks for speed: parallel builds, quiet output and
+   * offline mode, as configured by the other hookFastProfile* parameters.
+   */
+  @Parameter(property = "ghmp.hookFastProfile", defaultValue = "false")
+  private boolean hookFastProfile;
+
+  /**
+   * The '-T' value of the fast profile, '1C' building with one thread per available core. Empty to
+   * build with a single thread.
+   */
+  @Parameter(property = "ghmp.hookFastProfileThreads", defaultValue = "1C")
+  private String hookFastProfileThreads;
+
+  /** True for the fast profile to only print errors, without the transfer progress */
+  @Parameter(property = "ghmp.hookFastProfileQuiet", defaultValue = "true")
+  private boolean hookFastProfileQuiet;
+
+  /**
+   * Whether the fast profile runs offline. AUTO runs offline when every plugin and dependency
+   * declared by the reactor is in the local repository at installation. With AUTO or ALWAYS, a
+   * command failing on a missing artifact runs again online.
+   */
+  @Parameter(property = "ghmp.hookFastProfileOffline", defaultValue = "AUTO")
+  private OfflineMode hookFastProfileOffline;
+
+  /**
+   * True to build the Maven commands of the hooks into a persistent directory of the worktree git
+   * directory, instead of the project target directories. Hook builds then keep their own
+   * incremental state, and never invalidate the one of the IDE or of another worktree.
+   */
+  @Parameter(property = "ghmp.hookIsolatedBuildOutput", defaultValue = "false")
+  private boolean hookIsolatedBuildOutput;
+
+  /**
+   * True to record each successful pre-push run as a git note of the pushed commits whose tree it
+   * verified, then push the notes along. The note holds the tree, the fingerprint of the pre-push
+   * configuration, the duration and the result. The 'check-verification-note' goal reads it so that
+   * the continuous integration can skip the work the hook already did. Only runs on a work tree
+   * matching HEAD are recorded.
+   */
+  @Parameter(property = "ghmp.verificationNotes", defaultValue = "false")
+  private boolean verificationNotes;
+
+  /** The notes ref holding the verification notes */
+  @Parameter(property = "ghmp.verificationNotesRef", defaultValue = VerificationNote.DEFAULT_REF)
+  private String verificationNotesRef;
+
+  /**
+   * QUIET to write the output of the hook commands to a log file of the plugin directory, keeping
+   * the git client output to a one-line summary, followed by the last lines of the log on failure.
+   * Background post-commit runs always write to their own log.
+   */
+  @Parameter(property = "ghmp.hookOutputMode", defaultValue = "STREAM")
+  private HookOutputMode hookOutputMode;
+
+  /** The number of last lines of the log printed when a QUIET hook fails */
+  @Parameter(property = "ghmp.hookOutputTailLines", defaultValue = "40")
+  private int hookOutputTailLines;
+
+  /**
+   * The size in kilobytes beyond which the log of a QUIET hook is rotated. The 3 previous files are
+   * kept.
+   */
+  @Parameter(property = "ghmp.hookOutputLogMaxFileSize", defaultValue = "1024")
+  private int hookOutputLogMaxFileSize;
+
+  /**
+   * The environment variable marking scripted bulk commits. While it is set to a non empty value,
+   * the hooks apply their *BulkOperationPolicy as during a rebase.
+   */
+  @Parameter(property = "ghmp.bulkOperationMarker", defaultValue = "GHMP_BULK_OPERATION")
+  private String bulkOperationMarker;
+
+  /**
+   * The duration in milliseconds beyond which the goal logs the time of each of its phases at info
+   * level, instead of debug level. 0 to always log them.
+   */
+  @Parameter(property = "ghmp.phaseTimingThreshold", defaultValue = "1000")
+  private long phaseTimingThreshold;
+
+  /**
+   * True to write the time of each phase of the goal to git-hook-install-timing.json in the build
+   * directory, for build performance dashboards.
+   */
+  @Parameter(property = "ghmp.phaseTimingReport", defaultValue = "false")
+  private boolean phaseTimingReport;
+
   /**
    * Whether to use Maven command prefix for pre-commit hooks. When true, the hook will execute
    * maven commands. When false, the hook will execute the hookPipeline directly.
@@ -138,10 +392,109 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
   @Parameter(property = "ghmp.preCommitHookContent", defaultValue = "")
   private String preCommitHookContent;
 
+  /**
+   * The time in seconds after which the pre-commit hook is killed, with every process it started,
+   * and fails. 0 for no timeout. Steps accept their own timeout.
+   */
+  @Parameter(property = "ghmp.preCommitTimeout", defaultValue = "0")
+  private int preCommitTimeout;
+
+  /**
+   * The time in seconds after which the pre-commit hook warns that it is still running. 0 for no
+   * warning. Steps accept their own time budget.
+   */
+  @Parameter(property = "ghmp.preCommitTimeBudget", defaultValue = "0")
+  private int preCommitTimeBudget;
+
+  /**
+   * Globs of the changed paths triggering the pre-commit hook. '*' also matches '/', and '**&#47;'
+   * matches any directory depth. The hook is skipped when no changed path is selected, and runs on
+   * any change when empty. Steps accept their own includes and excludes.
+   */
+  @Parameter(property = "ghmp.preCommitIncludes")
+  private String[] preCommitIncludes;
+
+  /** Globs of the changed paths never triggering the pre-commit hook */
+  @Parameter(property = "ghmp.preCommitExcludes")
+  private String[] preCommitExcludes;
+
+  /**
+   * What the pre-commit hook does during a rebase, am, cherry-pick, revert or merge, or while the
+   * bulk operation marker is set: RUN, SKIP or DEFER.
+   */
+  @Parameter(property = "ghmp.preCommitBulkOperationPolicy", defaultValue = "RUN")
+  private BulkOperationPolicy preCommitBulkOperationPolicy;
+
   /** The list of environment variables to propagate to the pre-commit hooks */
   @Parameter(property = "ghmp.preCommitEnvVarToPropagate")
   private String[] preCommitEnvVarToPropagate;
 
+  /**
+   * True to run the Maven mode pre-commit hook through the Maven Daemon (mvnd) when it is
+   * installed, falling back to mvn otherwise. Ignored in debug mode.
+   */
+  @Parameter(property = "ghmp.preCommitMavenDaemon", defaultValue = "false")
+  private boolean preCommitMavenDaemon;
+
+  /**
+   * True to cache the pre-commit hook results by verified content. The content is the index tree,
+   * only considered when the working tree matches the index. A cached success skips the command, a
+   * cached failure replays its output.
+   */
+  @Parameter(property = "ghmp.preCommitResultCache", defaultValue = "false")
+  private boolean preCommitResultCache;
+
+  /**
+   * Named commands run by the pre-commit hook after its content, concurrently up to
+   * hookStepsParallelism. The first failing step stops the others.
+   */
+  @Parameter private HookStep[] preCommitSteps;
+
+  /**
+   * True to compute the staged paths once and expose them to the pre-commit command, through the
+   * GHMP_STAGED_FILES (comma-separated), GHMP_STAGED_FILES_LIST (newline-delimited file) and
+   * GHMP_STAGED_FILES_FILE (NUL-delimited file) environment variables. Paths are relative to the
+   * work tree root. The hook is skipped when no staged path is selected.
+   */
+  @Parameter(property = "ghmp.preCommitStagedFiles", defaultValue = "false")
+  private boolean preCommitStagedFiles;
+
+  /**
+   * Globs selecting the staged paths exposed to the pre-commit command. '*' also matches '/', and a
+   * leading '**&#47;' matches any directory depth. Empty to select every staged path.
+   */
+  @Parameter(property = "ghmp.preCommitStagedFilesIncludes")
+  private String[] preCommitStagedFilesIncludes;
+
+  /** Globs excluding staged paths from the ones exposed to the pre-commit command */
+  @Parameter(property = "ghmp.preCommitStagedFilesExcludes")
+  private String[] preCommitStagedFilesExcludes;
+
+  /**
+   * In Maven mode, the name of a property receiving the staged paths. Its value is the
+   * comma-separated paths, or '@' followed by the newline-delimited list file when they exceed
+   * stagedFilesInlineLimit.
+   */
+  @Parameter(property = "ghmp.preCommitStagedFilesProperty")
+  private String preCommitStagedFilesProperty;
+
+  /**
+   * True to run the pre-commit commands against a snapshot of the staged content, instead of the
+   * working tree. The snapshot lives in the git directory of the worktree and persists between
+   * runs: each run only writes the files whose staged content changed since the previous one, so
+   * that the incremental state of the builds run in it survives. Maven commands build the snapshot
+   * poms, and other commands run from the snapshot directory.
+   */
+  @Parameter(property = "ghmp.preCommitStagedSnapshot", defaultValue = "false")
+  private boolean preCommitStagedSnapshot;
+
+  /**
+   * The maximum length of the comma-separated staged paths. Beyond it, paths are only exposed
+   * through files so that commands never hit the system argument length limit.
+   */
+  @Parameter(property = "ghmp.stagedFilesInlineLimit", defaultValue = "32768")
+  private int stagedFilesInlineLimit;
+
   /**
    * Whether to use Maven command prefix for pre-push hooks. When true, the hook will execute maven
    * commands. When false, the hook will execute the hookPipeline directly.
@@ -161,10 +514,76 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
   @Parameter(property = "ghmp.prePushHookContent", defaultValue = "")
   private String prePushHookContent;
 
+  /**
+   * The time in seconds after which the pre-push hook is killed, with every process it started, and
+   * fails. 0 for no timeout. Steps accept their own timeout.
+   */
+  @Parameter(property = "ghmp.prePushTimeout", defaultValue = "0")
+  private int prePushTimeout;
+
+  /**
+   * The time in seconds after which the pre-push hook warns that it is still running. 0 for no
+   * warning. Steps accept their own time budget.
+   */
+  @Parameter(property = "ghmp.prePushTimeBudget", defaultValue = "0")
+  private int prePushTimeBudget;
+
+  /**
+   * Globs of the changed paths triggering the pre-push hook. '*' also matches '/', and '**&#47;'
+   * matches any directory depth. The hook is skipped when no changed path is selected, and runs on
+   * any change when empty. Steps accept their own includes and excludes.
+   */
+  @Parameter(property = "ghmp.prePushIncludes")
+  private String[] prePushIncludes;
+
+  /** Globs of the changed paths never triggering the pre-push hook */
+  @Parameter(property = "ghmp.prePushExcludes")
+  private String[] prePushExcludes;
+
+  /**
+   * What the pre-push hook does during a rebase, am, cherry-pick, revert or merge, or while the
+   * bulk operation marker is set: RUN, SKIP or DEFER. DEFER is not supported, since git never
+   * pushes during such an operation.
+   */
+  @Parameter(property = "ghmp.prePushBulkOperationPolicy", defaultValue = "RUN")
+  private BulkOperationPolicy prePushBulkOperationPolicy;
+
   /** The list of environment variables to propagate to the pre-push hooks */
   @Parameter(property = "ghmp.prePushEnvVarToPropagate")
   private String[] prePushEnvVarToPropagate;
 
+  /**
+   * True to run the Maven mode pre-push hook through the Maven Daemon (mvnd) when it is installed,
+   * falling back to mvn otherwise. Ignored in debug mode.
+   */
+  @Parameter(property = "ghmp.prePushMavenDaemon", defaultValue = "false")
+  private boolean prePushMavenDaemon;
+
+  /**
+   * True to cache the pre-push hook results by verified content. The content is the tree of HEAD,
+   * usually the pushed commit, only considered when the working tree matches it, so that nothing is
+   * stored for a run on staged or modified files. A cached success skips the command, a cached
+   * failure replays its output.
+   */
+  @Parameter(property = "ghmp.prePushResultCache", defaultValue = "false")
+  private boolean prePushResultCache;
+
+  /**
+   * Named commands run by the pre-push hook after its content, concurrently up to
+   * hookStepsParallelism. The first failing step stops the others.
+   */
+  @Parameter private HookStep[] prePushSteps;
+
+  /**
+   * True to only build the reactor modules affected by the pushed commits. The changed paths are
+   * mapped to the modules owning them, which are exposed through the GHMP_AFFECTED_MODULES
+   * environment variable and, in Maven mode, passed as '-pl &lt;modules&gt; -amd'. Changes to the
+   * root module, or that cannot be computed locally, build the whole reactor. The hook is skipped
+   * when no module is affected.
+   */
+  @Parameter(property = "ghmp.prePushAffectedModules", defaultValue = "false")
+  private boolean prePushAffectedModules;
+
   /**
    * Whether to use Maven command prefix for post-commit hooks. When true, the hook will execute
    * maven commands. When false, the hook will execute the hookPipeline directly.
@@ -180,10 +599,78 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
   @Parameter(property = "ghmp.postCommitHookContent", defaultValue = "")
   private String postCommitHookContent;
 
+  /**
+   * The time in seconds after which the post-commit hook is killed, with every process it started,
+   * and fails. 0 for no timeout. Steps accept their own timeout.
+   */
+  @Parameter(property = "ghmp.postCommitTimeout", defaultValue = "0")
+  private int postCommitTimeout;
+
+  /**
+   * The time in seconds after which the post-commit hook warns that it is still running. 0 for no
+   * warning. Steps accept their own time budget.
+   */
+  @Parameter(property = "ghmp.postCommitTimeBudget", defaultValue = "0")
+  private int postCommitTimeBudget;
+
+  /**
+   * Globs of the changed paths triggering the post-commit hook. '*' also matches '/', and '**&#47;'
+   * matches any directory depth. The hook is skipped when no changed path is selected, and runs on
+   * any change when empty. Steps accept their own includes and excludes.
+   */
+  @Parameter(property = "ghmp.postCommitIncludes")
+  private String[] postCommitIncludes;
+
+  /** Globs of the changed paths never triggering the post-commit hook */
+  @Parameter(property = "ghmp.postCommitExcludes")
+  private String[] postCommitExcludes;
+
+  /**
+   * What the post-commit hook does during a rebase, am, cherry-pick, revert or merge, or while the
+   * bulk operation marker is set: RUN, SKIP or DEFER.
+   */
+  @Parameter(property = "ghmp.postCommitBulkOperationPolicy", defaultValue = "RUN")
+  private BulkOperationPolicy postCommitBulkOperationPolicy;
+
   /** The list of environment variables to propagate to the post-commit hooks */
   @Parameter(property = "ghmp.postCommitEnvVarToPropagate")
   private String[] postCommitEnvVarToPropagate;
 
+  /**
+   * True to run the Maven mode post-commit hook through the Maven Daemon (mvnd) when it is
+   * installed, falling back to mvn otherwise. Ignored in debug mode.
+   */
+  @Parameter(property = "ghmp.postCommitMavenDaemon", defaultValue = "false")
+  private boolean postCommitMavenDaemon;
+
+  /**
+   * True to cache the post-commit hook results by verified content. The content is the tree of
+   * HEAD, the commit just made, only considered when the working tree matches it, so that nothing
+   * is stored for a run on staged or modified files. A cached success skips the command, a cached
+   * failure replays its output.
+   */
+  @Parameter(property = "ghmp.postCommitResultCache", defaultValue = "false")
+  private boolean postCommitResultCache;
+
+  /**
+   * Named commands run by the post-commit hook after its content, concurrently up to
+   * hookStepsParallelism. The first failing step stops the others.
+   */
+  @Parameter private HookStep[] postCommitSteps;
+
+  /**
+   * True to return from the post-commit hook at once, while a detached worker runs its command.
+   * Commits made while the worker is busy coalesce into a single run for the latest HEAD, exposed
+   * through the GHMP_COMMIT environment variable. The worker output goes to
+   * background/post-commit.log in the plugin directory.
+   */
+  @Parameter(property = "ghmp.postCommitBackground", defaultValue = "false")
+  private boolean postCommitBackground;
+
+  /** The niceness of the background post-commit worker. 0 to keep the normal CPU priority. */
+  @Parameter(property = "ghmp.postCommitBackgroundNiceness", defaultValue = "0")
+  private int postCommitBackgroundNiceness;
+
   /** The list of properties to propagate to the post-commit hooks */
   @Parameter(property = "ghmp.postCommitPropertiesToPropagate")
   private String[] postCommitPropertiesToPropagate;
@@ -193,6 +680,10 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
       getLog().debug("Not in execution root. Do not execute.");
       return;
     }
+    if (inStagedSnapshot()) {
+      getLog().debug("Building a staged snapshot of the hooks. Do not execute.");
+      return;
+    }
     if (skip) {
       Log log = getLog();
       if (log.isInfoEnabled()) {
@@ -201,57 +692,468 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
       return;
     }
 
+    long startNanos = System.nanoTime();
+    boolean installed = false;
     try {
-      getLog().info("Installing git hooks");
-      doExecute();
-      getLog().info("Installed git hooks");
+      if (reinstallOnCheckout && phaseTimer.time("install-stamp", this::buildFilesUnchanged)) {
+        getLog().info("Git hooks are up to date");
+      } else {
+        installed = doExecute();
+        phaseTimer.run("maven-daemon-warm-up", this::warmUpMavenDaemon);
+      }
     } catch (Exception e) {
       throw new MojoExecutionException(e.getMessage(), e);
     }
+    reportPhaseTimes(System.nanoTime() - startNanos, installed);
+  }
+
+  /**
+   * @return False if the hooks were up to date
+   */
+  private boolean doExecute() throws IOException {
+    Path hooksDirectory = phaseTimer.time("git-layout", this::hooksDirectory);
+    Path manifestFile = hooksDirectory.resolve(manifestFileName());
+    String fingerprint = phaseTimer.time("fingerprint", this::installFingerprint);
+
+    boolean upToDate =
+        phaseTimer.time(
+            "manifest",
+            () -> {
+              InstallManifest manifest = InstallManifest.read(manifestFile);
+              return manifest != null && manifest.isUpToDate(fingerprint, hooksDirectory);
+            });
+    if (upToDate) {
+      getLog().info("Git hooks are up to date");
+      writeInstallStamp(manifestFile);
+      return false;
+    }
+
+    getLog().info("Installing git hooks");
+    phaseTimer.time("hooks-directory", this::prepareHooksDirectory);
+
+    List<Path> installedFiles = new ArrayList<>();
+    installedFiles.add(phaseTimer.time("runtime", () -> writeRuntime(hooksDirectory)));
+    for (HookType hookType : HookType.values()) {
+      // Install hook only if content is provided
+      if (!hasCommands(hookType)) {
+        continue;
+      }
+      String phase = hookType.getName() + ".scripts";
+      installedFiles.add(phaseTimer.time(phase, () -> writePluginHook(hooksDirectory, hookType)));
+      installedFiles.add(
+          phaseTimer.time(phase, () -> configureHookBaseScript(hooksDirectory, hookType)));
+    }
+    if (Stream.of(HookType.values())
+        .anyMatch(
+            hookType ->
+                hasCommands(hookType)
+                    && bulkOperationPolicy(hookType) == BulkOperationPolicy.DEFER)) {
+      String phase = POST_REWRITE_HOOK_BASE_SCRIPT + ".scripts";
+      installedFiles.add(phaseTimer.time(phase, () -> writeDeferredRunsHook(hooksDirectory)));
+      installedFiles.add(
+          phaseTimer.time(
+              phase,
+              () ->
+                  configureHookBaseScript(
+                      hooksDirectory,
+                      POST_REWRITE_HOOK_BASE_SCRIPT,
+                      baseScriptHookFileName(POST_REWRITE_HOOK_BASE_SCRIPT))));
+    }
+    if (reinstallOnCheckout) {
+      for (String baseScript : REINSTALL_HOOK_BASE_SCRIPTS) {
+        String phase = baseScript + ".scripts";
+        installedFiles.add(
+            phaseTimer.time(phase, () -> writeReinstallHook(hooksDirectory, baseScript)));
+        installedFiles.add(
+            phaseTimer.time(
+                phase,
+                () ->
+                    configureHookBaseScript(
+                        hooksDirectory, baseScript, baseScriptHookFileName(baseScript))));
+      }
+    }
+
+    phaseTimer.run(
+        "manifest",
+        () -> InstallManifest.of(fingerprint, hooksDirectory, installedFiles).write(manifestFile));
+    writeInstallStamp(manifestFile);
+    getLog().info("Installed git hooks");
+    return true;
   }
 
-  private void doExecute() throws IOException {
-    Path hooksDirectory = prepareHooksDirectory();
+  private boolean buildFilesUnchanged() throws IOException {
+    InstallStamp stamp = InstallStamp.read(installStampFile());
+    return stamp != null && stamp.isUpToDate(buildFilesFingerprint());
+  }
 
-    // Install pre-commit hook if content is provided
-    if (preCommitHookContent != null && !preCommitHookContent.trim().isEmpty()) {
-      writePluginHook(hooksDirectory, HookType.PRE_COMMIT);
-      configureHookBaseScript(hooksDirectory, HookType.PRE_COMMIT);
+  private void writeInstallStamp(Path manifestFile) throws IOException {
+    if (reinstallOnCheckout) {
+      phaseTimer.run(
+          "install-stamp",
+          () -> new InstallStamp(buildFilesFingerprint(), manifestFile).write(installStampFile()));
+    }
+  }
+
+  private Path installStampFile() {
+    return buildDirectory.toPath().resolve(INSTALL_STAMP_FILE);
+  }
+
+  /**
+   * The files the configuration of the plugin can come from: the poms of the reactor, the .mvn
+   * directory of the execution root and the plugin properties given on the command line. The local
+   * environment the hooks embed is included too, since it changes without any build file changing.
+   */
+  private String buildFilesFingerprint() throws IOException {
+    if (buildFilesFingerprint != null) {
+      return buildFilesFingerprint;
+    }
+    Fingerprint fingerprint =
+        new Fingerprint()
+            .add("plugin", pluginDescriptor.getId())
+            .add("pluginFile", pluginFileStamp());
+    List<MavenProject> projects =
+        ofNullable(session.getAllProjects()).orElseGet(session::getProjects);
+    for (MavenProject project : projects) {
+      Path pom = project.getFile().toPath();
+      fingerprint.add("pom:" + pom.toAbsolutePath(), Fingerprint.sha256(Files.readAllBytes(pom)));
+    }
+    Path mavenConfigDirectory = gitBaseDir().resolve(".mvn");
+    if (Files.isDirectory(mavenConfigDirectory)) {
+      List<Path> mavenConfigFiles;
+      try (Stream<Path> files = Files.list(mavenConfigDirectory)) {
+        mavenConfigFiles = files.filter(Files::isRegularFile).sorted().collect(Collectors.toList());
+      }
+      for (Path file : mavenConfigFiles) {
+        fingerprint.add(".mvn:" + file.getFileName(), Fingerprint.sha256(Files.readAllBytes(file)));
+      }
+    }
+    Properties userProperties = session.getUserProperties();
+    for (String name : new TreeSet<>(userProperties.stringPropertyNames())) {
+      if (name.startsWith("ghmp.")) {
+        fingerprint.add("property:" + name, userProperties.getProperty(name));
+      }
+    }
+    addLocalEnvironment(fingerprint);
+    buildFilesFingerprint = fingerprint.toHex();
+    return buildFilesFingerprint;
+  }
+
+  /**
+   * Logs the time of each phase, where phases don't include the phases they run, and writes them to
+   * the report if enabled. Phases of a hook are prefixed by its name: '.content' generates the
+   * script, '.scripts' writes the files.
+   */
+  private void reportPhaseTimes(long totalNanos, boolean installed) {
+    Map<String, Long> nanosByPhase = phaseTimer.nanosByPhase();
+    String message =
+        "install-hooks took "
+            + millis(totalNanos)
+            + " ms: "
+            + nanosByPhase.entrySet().stream()
+                .map(phase -> phase.getKey() + " " + millis(phase.getValue()) + " ms")
+                .collect(Collectors.joining(", "));
+    if (TimeUnit.NANOSECONDS.toMillis(totalNanos) >= phaseTimingThreshold) {
+      getLog().info(message);
+    } else {
+      getLog().debug(message);
+    }
+    if (!phaseTimingReport) {
+      return;
+    }
+
+    StringBuilder report = new StringBuilder();
+    report
+        .append("{\"goal\":\"install-hooks\",\"installed\":")
+        .append(installed)
+        .append(",\"totalMillis\":")
+        .append(millis(totalNanos))
+        .append(",\"phases\":{");
+    report.append(
+        nanosByPhase.entrySet().stream()
+            .map(phase -> "\"" + phase.getKey() + "\":" + millis(phase.getValue()))
+            .collect(Collectors.joining(",")));
+    report.append("}}\n");
+    Path reportFile = buildDirectory.toPath().resolve(PHASE_TIMING_REPORT_FILE);
+    try {
+      Files.createDirectories(reportFile.getParent());
+      Files.write(reportFile, report.toString().getBytes(UTF_8));
+    } catch (IOException e) {
+      getLog().warn("Failed to write " + reportFile + ": " + e.getMessage());
+    }
+  }
+
+  private static String millis(long nanos) {
+    return String.format(Locale.ROOT, "%.3f", nanos / 1_000_000.0);
+  }
+
+  /**
+   * Everything the installed files depend on. The generated content itself is a function of these
+   * inputs, while the manifest keeps the digest of each written file to detect outside changes.
+   */
+  private String installFingerprint() {
+    Fingerprint fingerprint =
+        new Fingerprint()
+            .add("plugin", pluginDescriptor.getId())
+            .add("pluginFile", pluginFileStamp())
+            .add("mavenExecutableValidation", mavenExecutableValidation)
+            .add("pom", pomFile().toAbsolutePath())
+            .add("artifactId", artifactId())
+            .add("truncateHooksBaseScripts", truncateHooksBaseScripts)
+            .add("preCommitStagedFiles", preCommitStagedFiles)
+            .add("preCommitStagedFilesIncludes", preCommitStagedFilesIncludes)
+            .add("preCommitStagedFilesExcludes", preCommitStagedFilesExcludes)
+            .add("preCommitStagedFilesProperty", preCommitStagedFilesProperty)
+            .add("stagedFilesInlineLimit", stagedFilesInlineLimit)
+            .add("prePushAffectedModules", prePushAffectedModules)
+            .add("mavenDaemonArgs", mavenDaemonArgs)
+            .add("resultCacheMaxAgeDays", resultCacheMaxAgeDays)
+            .add("resultCacheMaxSize", resultCacheMaxSize)
+            .add("hookStepsParallelism", hookStepsParallelism)
+            .add("hookTelemetry", hookTelemetry)
+            .add("hookTelemetryMaxFileSize", hookTelemetryMaxFileSize)
+            .add("postCommitBackground", postCommitBackground)
+            .add("postCommitBackgroundNiceness", postCommitBackgroundNiceness)
+            .add("hookFastProfile", hookFastProfile)
+            .add("hookIsolatedBuildOutput", hookIsolatedBuildOutput)
+            .add("bulkOperationMarker", bulkOperationMarker)
+            .add("hookOutputMode", hookOutputMode)
+            .add("verificationNotes", verificationNotes)
+            .add("verificationNotesRef", verificationNotesRef)
+            .add("hookOutputTailLines", hookOutputTailLines)
+            .add("hookOutputLogMaxFileSize", hookOutputLogMaxFileSize)
+            .add("preCommitStagedSnapshot", preCommitStagedSnapshot)
+            .add("reinstallOnCheckout", reinstallOnCheckout);
+    if (hookFastProfile) {
+      fingerprint
+          .add("hookFastProfileThreads", hookFastProfileThreads)
+          .add("hookFastProfileQuiet", hookFastProfileQuiet)
+          .add("hooksRunOffline", hooksRunOffline());
+    }
+    if (prePushAffectedModules) {
+      fingerprint
+          .add("rootModuleDirectory", rootModuleDirectory())
+          .add("reactorModules", reactorModules());
+    }
+    for (HookType hookType : HookType.values()) {
+      String prefix = hookType.getName() + ".";
+      fingerprint
+          .add(prefix + "content", hookType.hookContentGetter.apply(this))
+          .add(prefix + "commandMavenPrefix", hookType.commandMavenPrefixGetter.apply(this))
+          .add(prefix + "mavenDaemon", hookType.mavenDaemonGetter.apply(this))
+          .add(prefix + "resultCache", hookType.resultCacheGetter.apply(this))
+          .add(prefix + "timeout", hookType.timeoutGetter.apply(this))
+          .add(prefix + "timeBudget", hookType.timeBudgetGetter.apply(this))
+          .add(prefix + "includes", hookType.includesGetter.apply(this))
+          .add(prefix + "excludes", hookType.excludesGetter.apply(this))
+          .add(prefix + "bulkOperationPolicy", hookType.bulkOperationPolicyGetter.apply(this));
+      List<HookStep> steps = steps(hookType);
+      for (int i = 0; i < steps.size(); i++) {
+        HookStep step = steps.get(i);
+        fingerprint
+            .add(prefix + "step." + i + ".name", step.getName())
+            .add(prefix + "step." + i + ".command", step.getCommand())
+            .add(prefix + "step." + i + ".mavenPrefix", step.getMavenPrefix())
+            .add(prefix + "step." + i + ".timeout", step.getTimeout())
+            .add(prefix + "step." + i + ".timeBudget", step.getTimeBudget())
+            .add(prefix + "step." + i + ".includes", step.getIncludes())
+            .add(prefix + "step." + i + ".excludes", step.getExcludes());
+      }
+      List<ModuleHookStep> moduleSteps = moduleSteps(hookType);
+      for (int i = 0; i < moduleSteps.size(); i++) {
+        ModuleHookStep moduleStep = moduleSteps.get(i);
+        HookStep step = moduleStep.step();
+        fingerprint
+            .add(prefix + "moduleStep." + i + ".directory", moduleStep.directory())
+            .add(prefix + "moduleStep." + i + ".pom", moduleStep.pom())
+            .add(prefix + "moduleStep." + i + ".name", step.getName())
+            .add(prefix + "moduleStep." + i + ".command", step.getCommand())
+            .add(prefix + "moduleStep." + i + ".mavenPrefix", step.getMavenPrefix())
+            .add(prefix + "moduleStep." + i + ".timeout", step.getTimeout())
+            .add(prefix + "moduleStep." + i + ".timeBudget", step.getTimeBudget())
+            .add(prefix + "moduleStep." + i + ".includes", step.getIncludes())
+            .add(prefix + "moduleStep." + i + ".excludes", step.getExcludes());
+      }
     }
+    addLocalEnvironment(fingerprint);
+    return fingerprint.toHex();
+  }
 
-    // Install pre-push hook if content is provided
-    if (prePushHookContent != null && !prePushHookContent.trim().isEmpty()) {
-      writePluginHook(hooksDirectory, HookType.PRE_PUSH);
-      configureHookBaseScript(hooksDirectory, HookType.PRE_PUSH);
+  /**
+   * Adds what the hooks embed from the machine the build runs on: the Maven installation, the
+   * inputs the resolution of the executables depends on, and the values of the propagated variables
+   * and properties. Nothing gets resolved, so that up to date hooks cost no Maven resolution.
+   */
+  private void addLocalEnvironment(Fingerprint fingerprint) {
+    fingerprint.add("mavenHome", System.getProperty("maven.home")).add("debug", debug);
+    for (HookType hookType : HookType.values()) {
+      String prefix = hookType.getName() + ".";
+      Stream.of(ofNullable(hookType.envVarToPropagateGetter.apply(this)).orElse(new String[0]))
+          .filter(envVar -> envVar != null && !envVar.trim().isEmpty())
+          .forEach(envVar -> fingerprint.add(prefix + "env." + envVar, getEnvVar(envVar.trim())));
+      Stream.of(ofNullable(hookType.propertiesToPropagateGetter.apply(this)).orElse(new String[0]))
+          .forEach(prop -> fingerprint.add(prefix + "property." + prop, System.getProperty(prop)));
     }
+    if (!reinstallOnCheckout && Stream.of(HookType.values()).noneMatch(this::usesMaven)) {
+      return;
+    }
+    MavenEnvironment executableInputs =
+        new MavenEnvironment(this::getLog, null, mavenExecutableValidation);
+    fingerprint.add("mavenExecutable", executableInputs.getMavenExecutableInputs(debug));
+    if (usesMavenDaemon()) {
+      // Hooks start using mvnd once it gets installed
+      fingerprint.add("mavenDaemonExecutable", executableInputs.getMavenDaemonExecutableInputs());
+    }
+  }
 
-    // Install post-commit hook if content is provided
-    if (postCommitHookContent != null && !postCommitHookContent.trim().isEmpty()) {
-      writePluginHook(hooksDirectory, HookType.POST_COMMIT);
-      configureHookBaseScript(hooksDirectory, HookType.POST_COMMIT);
+  /** Snapshot builds of the plugin change without changing version */
+  private String pluginFileStamp() {
+    File pluginFile =
+        ofNullable(pluginDescriptor.getPluginArtifact()).map(Artifact::getFile).orElse(null);
+    if (pluginFile == null) {
+      return null;
     }
+    return pluginFile.lastModified() + ":" + pluginFile.length();
   }
 
-  private void writePluginHook(Path hooksDirectory, HookType hookType) throws IOException {
+  private Path writePluginHook(Path hooksDirectory, HookType hookType) throws IOException {
     getLog().debug("Writing plugin " + hookType.getName() + " hook file");
-    String hookContent = generateHookContent(hookType);
+    String hookContent =
+        phaseTimer.time(hookType.getName() + ".content", () -> generateHookContent(hookType));
 
     Path hookFile = hooksDirectory.resolve(pluginHookFileName(hookType));
-    executableManager.getOrCreateExecutableScript(hookFile).truncate().write(hookContent);
+    executableManager.getOrCreateExecutableScript(hookFile).write(hookContent);
     getLog().debug("Written plugin " + hookType.getName() + " hook file");
+    return hookFile;
+  }
+
+  private Path writeRuntime(Path hooksDirectory) throws IOException {
+    getLog().debug("Writing plugin hook runtime file");
+    String runtime;
+    try (InputStream inputStream = InstallHooksMojo.class.getResourceAsStream(RUNTIME_RESOURCE)) {
+      runtime = IOUtils.toString(requireNonNull(inputStream, RUNTIME_RESOURCE), UTF_8);
+    }
+    Path runtimeFile = hooksDirectory.resolve(runtimeFileName());
+    executableManager.getOrCreateExecutableScript(runtimeFile).write(runtime);
+    getLog().debug("Written plugin hook runtime file");
+    return runtimeFile;
+  }
+
+  /**
+   * Writes the hook reinstalling the hooks when a branch switch or a merge changes a pom or a .mvn
+   * file
+   */
+  private Path writeReinstallHook(Path hooksDirectory, String baseScript) throws IOException {
+    Path mavenExecutable =
+        phaseTimer
+            .time("maven-executables", () -> mavenEnvironment().getMavenExecutable(debug))
+            .toAbsolutePath();
+    StringBuilder content = new StringBuilder();
+    content.append("#!/bin/bash\n");
+    content.append("set -e\n");
+    content.append("\n");
+    content.append(". \"$(dirname \"$0\")/").append(runtimeFileName()).append("\"\n");
+    content.append("\n");
+    content
+        .append("ghmp_reinstall_hooks ")
+        .append(shellQuote(baseScript))
+        .append(" ")
+        .append(unixifyPath(mavenExecutable))
+        .append(" ")
+        .append(unixifyPath(pomFile()))
+        .append(" \"$@\"\n");
+
+    Path hookFile = hooksDirectory.resolve(baseScriptHookFileName(baseScript));
+    executableManager.getOrCreateExecutableScript(hookFile).write(content.toString());
+    return hookFile;
+  }
+
+  /** Writes the hook running, at the end of a rebase, the hooks deferred during it */
+  private Path writeDeferredRunsHook(Path hooksDirectory) throws IOException {
+    StringBuilder content = new StringBuilder();
+    content.append("#!/bin/bash\n");
+    content.append("set -e\n");
+    content.append("\n");
+    content.append(". \"$(dirname \"$0\")/").append(runtimeFileName()).append("\"\n");
+    content.append("\n");
+    content.append("ghmp_run_deferred \"$1\" ").append(shellQuote(bulkOperationMarker()));
+    for (HookType hookType : HookType.values()) {
+      if (hasCommands(hookType) && bulkOperationPolicy(hookType) == BulkOperationPolicy.DEFER) {
+        content
+            .append(" ")
+            .append(shellQuote(hookType.getName()))
+            .append(" \"")
+            .append(hookBaseScriptCall(pluginHookFileName(hookType)))
+            .append("\"");
+      }
+    }
+    content.append("\n");
+
+    Path hookFile = hooksDirectory.resolve(baseScriptHookFileName(POST_REWRITE_HOOK_BASE_SCRIPT));
+    executableManager.getOrCreateExecutableScript(hookFile).write(content.toString());
+    return hookFile;
+  }
+
+  private BulkOperationPolicy bulkOperationPolicy(HookType hookType) {
+    BulkOperationPolicy policy =
+        ofNullable(hookType.bulkOperationPolicyGetter.apply(this)).orElse(BulkOperationPolicy.RUN);
+    if (hookType == HookType.PRE_PUSH && policy == BulkOperationPolicy.DEFER) {
+      throw new MavenGitHookException(
+          "The pre-push hook cannot be deferred: git never pushes during a bulk operation");
+    }
+    return policy;
+  }
+
+  private boolean verificationNotes(HookType hookType) {
+    return hookType == HookType.PRE_PUSH && verificationNotes && hasCommands(hookType);
+  }
+
+  private String verificationNotesRef() {
+    String ref = StringUtils.trimToEmpty(verificationNotesRef);
+    if (!ref.matches("refs/notes/[A-Za-z0-9._/-]+")) {
+      throw new MavenGitHookException(
+          "The verification notes ref '" + ref + "' is not a ref under refs/notes/");
+    }
+    return ref;
   }
 
-  private void configureHookBaseScript(Path hooksDirectory, HookType hookType) throws IOException {
-    Executable baseHook =
-        executableManager.getOrCreateExecutableScript(
-            hooksDirectory.resolve(hookType.getBaseScript()));
-    getLog().debug("Configuring '" + baseHook + "' for " + hookType.getName());
+  /** The fingerprint of the pre-push configuration, as the check-verification-note goal sees it */
+  private String verificationFingerprint() {
+    return VerificationNote.fingerprint(
+        pluginDescriptor.getId(),
+        ofNullable(session.getAllProjects()).orElseGet(session::getProjects),
+        HookType.PRE_PUSH.getName(),
+        VerificationNote.PRE_PUSH_PARAMETER_PREFIX,
+        session.getUserProperties());
+  }
+
+  private String bulkOperationMarker() {
+    String marker = StringUtils.trimToEmpty(bulkOperationMarker);
+    if (!marker.isEmpty() && !marker.matches("[A-Za-z_][A-Za-z0-9_]*")) {
+      throw new MavenGitHookException(
+          "The bulk operation marker '" + marker + "' is not an environment variable name");
+    }
+    return marker;
+  }
+
+  private Path configureHookBaseScript(Path hooksDirectory, HookType hookType) throws IOException {
+    return configureHookBaseScript(
+        hooksDirectory, hookType.getBaseScript(), pluginHookFileName(hookType));
+  }
+
+  private Path configureHookBaseScript(
+      Path hooksDirectory, String baseScript, String pluginHookFileName) throws IOException {
+    Path baseHookFile = hooksDirectory.resolve(baseScript);
+    Executable baseHook = executableManager.getOrCreateExecutableScript(baseHookFile);
+    getLog().debug("Configuring '" + baseHook + "' for " + baseScript);
+    Executable.Edit edit = baseHook.edit();
     if (truncateHooksBaseScripts) {
-      baseHook.truncate();
+      edit.truncate();
     } else {
-      baseHook.removeCommandCall(hookBaseScriptCall(hookType));
+      edit.removeCommandCall(legacyHookBaseScriptCall(pluginHookFileName))
+          .removeCommandCall(hookBaseScriptCall(pluginHookFileName), HOOK_ARGUMENTS);
     }
-    baseHook.appendCommandCall(hookBaseScriptCall(hookType));
+    edit.appendCommandCall(hookBaseScriptCall(pluginHookFileName), HOOK_ARGUMENTS).apply();
+    return baseHookFile;
   }
 
   private String buildAdditionalMavenArguments(String[] propertiesToPropagate) {
@@ -266,7 +1168,8 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
     return propagatedProperties.collect(Collectors.joining(" "));
   }
 
-  private String generateHookContent(HookType hookType) {
+  /** Package-private for the benchmarks module */
+  String generateHookContent(HookType hookType) {
     StringBuilder content = new StringBuilder();
     content.append("#!/bin/bash\n");
     content.append("set -e\n");
@@ -276,42 +1179,679 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
     addEnvironmentVariables(content, hookType);
     content.append("\n");
 
+    content.append(". \"$(dirname \"$0\")/").append(runtimeFileName()).append("\"\n");
+    if (verificationNotes(hookType)) {
+      content.append("ghmp_verification_notes_init \"$1\"\n");
+    }
+    BulkOperationPolicy bulkOperationPolicy = bulkOperationPolicy(hookType);
+    if (bulkOperationPolicy != BulkOperationPolicy.RUN) {
+      content
+          .append("ghmp_bulk_operation_policy ")
+          .append(shellQuote(hookType.getName()))
+          .append(" ")
+          .append(bulkOperationPolicy)
+          .append(" ")
+          .append(shellQuote(bulkOperationMarker()))
+          .append("\n");
+    }
+    if (hookTelemetry) {
+      content
+          .append("ghmp_telemetry_start ")
+          .append(shellQuote(hookType.getName()))
+          .append(" ")
+          .append(hookTelemetryMaxFileSize)
+          .append("\n");
+    }
+    content.append("\n");
+
     // Get hook-specific configuration
+    boolean stagedFiles = hookType == HookType.PRE_COMMIT && preCommitStagedFiles;
+    boolean affectedModules = hookType == HookType.PRE_PUSH && prePushAffectedModules;
+
+    if (stagedFiles) {
+      content.append("ghmp_collect_staged_files ").append(stagedFilesInlineLimit);
+      appendShellWords(content, preCommitStagedFilesIncludes);
+      content.append(" --");
+      appendShellWords(content, preCommitStagedFilesExcludes);
+      content.append("\n");
+    }
+    if (affectedModules) {
+      content.append("ghmp_collect_pushed_modules ").append(shellQuote(rootModuleDirectory()));
+      reactorModules()
+          .forEach(
+              (directory, selector) ->
+                  appendShellWords(content, new String[] {directory, selector}));
+      content.append("\n");
+    }
+
+    // Only generate commands if hookContent or steps are provided
+    if (hasCommands(hookType)) {
+      String command = generateHookCommand(hookType, stagedFiles, affectedModules);
+      int timeout = hookType.timeoutGetter.apply(this);
+      int timeBudget = hookType.timeBudgetGetter.apply(this);
+      if (timeout > 0 || timeBudget > 0) {
+        command =
+            "ghmp_limited_command() {\n"
+                + command
+                + "}\n"
+                + "ghmp_run_limited "
+                + shellQuote(hookType.getName())
+                + " "
+                + Math.max(timeout, 0)
+                + " "
+                + Math.max(timeBudget, 0)
+                + " ghmp_limited_command\n";
+      }
+      if (hookType.resultCacheGetter.apply(this)) {
+        String hookFingerprint =
+            new Fingerprint()
+                .add("plugin", pluginDescriptor.getId())
+                .add("pluginFile", pluginFileStamp())
+                .add("content", content + command)
+                .toHex();
+        command =
+            "ghmp_hook_command() {\n"
+                + command
+                + "}\n"
+                + "ghmp_run_cached "
+                + shellQuote(hookType.getName())
+                + " "
+                + hookFingerprint
+                + " "
+                + resultCacheMaxAgeDays
+                + " "
+                + resultCacheMaxSize * 1024L
+                + " ghmp_hook_command\n";
+      }
+      if (verificationNotes(hookType)) {
+        command =
+            "ghmp_verified_command() {\n"
+                + command
+                + "}\n"
+                + "ghmp_run_verified "
+                + shellQuote(hookType.getName())
+                + " "
+                + shellQuote(verificationNotesRef())
+                + " "
+                + verificationFingerprint()
+                + " ghmp_verified_command\n";
+      }
+      if (hookType == HookType.POST_COMMIT && postCommitBackground) {
+        command =
+            "ghmp_background_command() {\n"
+                + command
+                + "}\n"
+                + "ghmp_run_background "
+                + shellQuote(hookType.getName())
+                + " "
+                + Math.max(postCommitBackgroundNiceness, 0)
+                + " ghmp_background_command\n";
+      } else if (hookOutputMode == HookOutputMode.QUIET) {
+        command =
+            "ghmp_quiet_command() {\n"
+                + command
+                + "}\n"
+                + "ghmp_run_quiet "
+                + shellQuote(hookType.getName())
+                + " "
+                + Math.max(hookOutputLogMaxFileSize, 1)
+                + " "
+                + Math.max(hookOutputTailLines, 0)
+                + " ghmp_quiet_command\n";
+      }
+      content.append(command);
+    }
+    // If hookContent is empty, create empty script (just bash header and env vars)
+
+    return content.toString();
+  }
+
+  /**
+   * The lines running the hook content. Steps, if any, run through the runtime step runner with the
+   * hook content as their first step. Globs of the hook and of its steps select them from the paths
+   * the hook changes, computed once.
+   */
+  private String generateHookCommand(
+      HookType hookType, boolean stagedFiles, boolean affectedModules) {
     String hookContent = hookType.hookContentGetter.apply(this);
     boolean commandMavenPrefix = hookType.commandMavenPrefixGetter.apply(this);
+    HookStep[] configuredSteps = hookType.stepsGetter.apply(this);
+    List<ModuleHookStep> moduleSteps = moduleSteps(hookType);
+    List<HookStep> steps = steps(hookType);
+    Path mavenDaemonExecutable = usesMaven(hookType) ? mavenDaemonExecutable(hookType) : null;
+    boolean hookGlobs =
+        hasWords(hookType.includesGetter.apply(this))
+            || hasWords(hookType.excludesGetter.apply(this));
+    // Module steps only run when the hook changes paths under their module
+    boolean selectedSteps =
+        !moduleSteps.isEmpty()
+            || steps.stream()
+                .anyMatch(step -> hasWords(step.getIncludes()) || hasWords(step.getExcludes()));
 
-    // Only generate commands if hookContent is not empty
-    if (hookContent != null && !hookContent.isEmpty()) {
-      if (commandMavenPrefix) {
-        // Maven mode
-        String mavenExecutable =
-            unixifyPath(mavenEnvironment.getMavenExecutable(debug).toAbsolutePath());
-        content.append(mavenExecutable);
-        content.append(" -f ");
-        content.append(unixifyPath(pomFile().toAbsolutePath()));
-
-        // Get hook-specific properties to propagate
-        String[] propertiesToPropagate = hookType.propertiesToPropagateGetter.apply(this);
-        String additionalArgs = buildAdditionalMavenArguments(propertiesToPropagate);
-        if (!additionalArgs.isEmpty()) {
-          content.append(" ").append(additionalArgs);
-        }
+    StringBuilder command = new StringBuilder();
+    if (hookGlobs || selectedSteps) {
+      command
+          .append("ghmp_collect_changed_paths ")
+          .append(shellQuote(hookType.getName()))
+          .append("\n");
+    }
+    if (hookGlobs) {
+      command.append("ghmp_require_changed_paths ").append(shellQuote(hookType.getName()));
+      appendGlobs(
+          command, hookType.includesGetter.apply(this), hookType.excludesGetter.apply(this));
+      command.append("\n");
+    }
+    if (stagedSnapshot(hookType)) {
+      command
+          .append("ghmp_stage_snapshot ")
+          .append(unixifyPath(gitLayout().gitDirectory().resolve(PLUGIN_DIR).resolve(SNAPSHOT_DIR)))
+          .append("\n");
+    }
+    if ((configuredSteps == null || configuredSteps.length == 0) && moduleSteps.isEmpty()) {
+      return command
+          .append(
+              generateCommand(
+                  hookType,
+                  hookContent,
+                  commandMavenPrefix,
+                  mavenDaemonExecutable,
+                  stagedFiles,
+                  affectedModules,
+                  pomFile()))
+          .toString();
+    }
 
-        content.append(" ").append(hookContent);
+    int parallelism =
+        hookStepsParallelism > 0
+            ? hookStepsParallelism
+            : Runtime.getRuntime().availableProcessors();
+    StringBuilder runSteps = new StringBuilder("ghmp_run_steps ").append(parallelism);
+    StringBuilder addSteps = new StringBuilder();
+    for (int i = 0; i < steps.size(); i++) {
+      HookStep step = steps.get(i);
+      String function = "ghmp_step_" + (i + 1);
+      boolean mavenPrefix = ofNullable(step.getMavenPrefix()).orElse(commandMavenPrefix);
+      command
+          .append(function)
+          .append("() {\n")
+          .append(
+              generateCommand(
+                  hookType,
+                  step.getCommand(),
+                  mavenPrefix,
+                  mavenDaemonExecutable,
+                  stagedFiles,
+                  affectedModules,
+                  pomFile()))
+          .append("}\n");
+      if (selectedSteps) {
+        addSteps.append("ghmp_add_step ");
+        appendStepArguments(addSteps, step, function);
+        appendGlobs(addSteps, step.getIncludes(), step.getExcludes());
+        addSteps.append("\n");
       } else {
-        // Direct command mode
-        content.append(hookContent);
+        runSteps.append(" ");
+        appendStepArguments(runSteps, step, function);
       }
-      content.append("\n");
     }
-    // If hookContent is empty, create empty script (just bash header and env vars)
+    if (!selectedSteps) {
+      return command.append(runSteps).append("\n").toString();
+    }
 
-    return content.toString();
+    for (int i = 0; i < moduleSteps.size(); i++) {
+      ModuleHookStep moduleStep = moduleSteps.get(i);
+      HookStep step = moduleStep.step();
+      String function = "ghmp_step_" + (steps.size() + i + 1);
+      boolean mavenPrefix = ofNullable(step.getMavenPrefix()).orElse(commandMavenPrefix);
+      command
+          .append(function)
+          .append("() {\n")
+          .append("cd ")
+          .append(hookPath(moduleStep.basedir(), stagedSnapshot(hookType)))
+          .append("\n")
+          .append(
+              generateCommand(
+                  hookType,
+                  step.getCommand(),
+                  mavenPrefix,
+                  mavenDaemonExecutable,
+                  stagedFiles,
+                  false,
+                  moduleStep.pom()))
+          .append("}\n");
+      addSteps.append("ghmp_add_step ");
+      appendStepArguments(addSteps, step, function);
+      appendGlobs(addSteps, moduleStep.includes(), moduleStep.excludes());
+      addSteps.append("\n");
+    }
+    runSteps.append(" \"${ghmp_steps[@]}\"");
+    return command.append(addSteps).append(runSteps).append("\n").toString();
+  }
+
+  /** Appends the name, timeout, budget and function of a step, as the step runner takes them */
+  private static void appendStepArguments(StringBuilder arguments, HookStep step, String function) {
+    arguments
+        .append(shellQuote(step.getName()))
+        .append(" ")
+        .append(Math.max(ofNullable(step.getTimeout()).orElse(0), 0))
+        .append(" ")
+        .append(Math.max(ofNullable(step.getTimeBudget()).orElse(0), 0))
+        .append(" ")
+        .append(function);
+  }
+
+  /** Appends include and exclude globs, as the runtime path selection takes them */
+  private static void appendGlobs(StringBuilder arguments, String[] includes, String[] excludes) {
+    appendShellWords(arguments, includes);
+    arguments.append(" --");
+    appendShellWords(arguments, excludes);
+  }
+
+  private static boolean hasWords(String[] words) {
+    return words != null && Stream.of(words).anyMatch(StringUtils::isNotBlank);
+  }
+
+  /** The lines running a single command, in Maven or direct command mode */
+  private String generateCommand(
+      HookType hookType,
+      String hookContent,
+      boolean commandMavenPrefix,
+      Path mavenDaemonExecutable,
+      boolean stagedFiles,
+      boolean affectedModules,
+      Path pom) {
+    StringBuilder command = new StringBuilder();
+    if (commandMavenPrefix) {
+      // Maven mode
+      Path mavenExecutable =
+          phaseTimer
+              .time("maven-executables", () -> mavenEnvironment().getMavenExecutable(debug))
+              .toAbsolutePath();
+      // The daemon command is resolved on its own line, before the line running it
+      if (mavenDaemonExecutable != null) {
+        command.append("ghmp_maven_command ").append(shellQuote(unixPath(mavenDaemonExecutable)));
+        appendShellWords(command, mavenDaemonArgs);
+        command.append(" -- ").append(shellQuote(unixPath(mavenExecutable))).append("\n");
+      }
+      if (hookFastProfile && hooksRunOffline()) {
+        command.append("ghmp_run_offline ");
+      }
+      if (mavenDaemonExecutable == null) {
+        command.append(unixifyPath(mavenExecutable));
+      } else {
+        command.append("\"${GHMP_MAVEN_COMMAND[@]}\"");
+      }
+      command.append(" -f ");
+      command.append(hookPath(pom, stagedSnapshot(hookType)));
+      if (hookFastProfile) {
+        appendFastProfileArguments(command);
+      }
+
+      // Get hook-specific properties to propagate
+      String[] propertiesToPropagate = hookType.propertiesToPropagateGetter.apply(this);
+      String additionalArgs = buildAdditionalMavenArguments(propertiesToPropagate);
+      if (!additionalArgs.isEmpty()) {
+        command.append(" ").append(additionalArgs);
+      }
+      if (stagedFiles && StringUtils.isNotBlank(preCommitStagedFilesProperty)) {
+        command
+            .append(" \"-D")
+            .append(preCommitStagedFilesProperty.trim())
+            .append("=$(ghmp_staged_files_argument)\"");
+      }
+      if (affectedModules) {
+        command.append(" \"${GHMP_MAVEN_MODULE_ARGS[@]}\"");
+      }
+      if (hookIsolatedBuildOutput) {
+        appendIsolatedBuildOutputArguments(command);
+      }
+
+      command.append(" ").append(hookContent);
+    } else if (stagedSnapshot(hookType)) {
+      // Direct command mode, from the snapshot directory
+      command
+          .append("(\ncd ")
+          .append(hookPath(gitLayout().workTree(), true))
+          .append("\n")
+          .append(hookContent)
+          .append("\n)");
+    } else {
+      // Direct command mode
+      command.append(hookContent);
+    }
+    command.append("\n");
+    return command.toString();
+  }
+
+  private boolean stagedSnapshot(HookType hookType) {
+    return hookType == HookType.PRE_COMMIT && preCommitStagedSnapshot;
+  }
+
+  /**
+   * The quoted path of a file of the work tree, as the hook reaches it: in the staged snapshot
+   * exposed through GHMP_STAGED_SNAPSHOT when the hook runs against it.
+   */
+  private String hookPath(Path path, boolean stagedSnapshot) {
+    if (!stagedSnapshot) {
+      return unixifyPath(path);
+    }
+    Path workTree = gitLayout().workTree();
+    Path absolutePath = path.toAbsolutePath().normalize();
+    if (workTree == null || !absolutePath.startsWith(workTree.toAbsolutePath().normalize())) {
+      throw new MavenGitHookException(
+          "The staged snapshot only holds the work tree, which " + path + " is not part of");
+    }
+    String relativePath = relativeUnixPath(workTree.toAbsolutePath().normalize(), absolutePath);
+    return "\"$GHMP_STAGED_SNAPSHOT" + (relativePath.isEmpty() ? "" : "/" + relativePath) + "\"";
+  }
+
+  /** Whether this build is the one of a hook, run against the staged snapshot */
+  private boolean inStagedSnapshot() {
+    String snapshot = System.getenv(STAGED_SNAPSHOT_ENV_VAR);
+    return StringUtils.isNotBlank(snapshot)
+        && gitBaseDir()
+            .toAbsolutePath()
+            .normalize()
+            .startsWith(Paths.get(snapshot).toAbsolutePath().normalize());
+  }
+
+  /** Runs the isolate-build-output goal first, so that the goals of the hook build elsewhere */
+  private void appendIsolatedBuildOutputArguments(StringBuilder command) {
+    Path directory =
+        gitLayout().gitDirectory().resolve(PLUGIN_DIR).resolve(ISOLATED_BUILD_OUTPUT_DIR);
+    command
+        .append(" -Dghmp.isolatedBuildOutput=")
+        .append(unixifyPath(directory.toAbsolutePath()))
+        .append(" ")
+        .append(
+            shellQuote(
+                pluginDescriptor.getGroupId()
+                    + ":"
+                    + pluginDescriptor.getArtifactId()
+                    + ":"
+                    + pluginDescriptor.getVersion()
+                    + ":isolate-build-output"));
+  }
+
+  private void appendFastProfileArguments(StringBuilder command) {
+    if (StringUtils.isNotBlank(hookFastProfileThreads)) {
+      command.append(" -T ").append(shellQuote(hookFastProfileThreads.trim()));
+    }
+    if (hookFastProfileQuiet) {
+      // Quiet mode hides the transfer progress too, and unlike --no-transfer-progress it is
+      // supported before Maven 3.6.1
+      command.append(" -q");
+    }
+  }
+
+  /** Whether the fast profile runs the Maven commands offline, checked once per execution */
+  private boolean hooksRunOffline() {
+    if (hooksRunOffline == null) {
+      hooksRunOffline = phaseTimer.time("offline-check", this::checkHooksRunOffline);
+    }
+    return hooksRunOffline;
+  }
+
+  private boolean checkHooksRunOffline() {
+    if (hookFastProfileOffline != OfflineMode.AUTO) {
+      return hookFastProfileOffline == OfflineMode.ALWAYS;
+    }
+    List<MavenProject> projects =
+        ofNullable(session.getAllProjects()).orElseGet(session::getProjects);
+    String missing =
+        new LocalArtifacts(
+                session.getRepositorySession().getLocalRepository().getBasedir().toPath())
+            .findMissing(projects);
+    if (missing != null) {
+      getLog().debug("Hooks run online since " + missing + " is not in the local repository");
+      return false;
+    }
+    return true;
+  }
+
+  private boolean hasCommands(HookType hookType) {
+    return !steps(hookType).isEmpty() || !moduleSteps(hookType).isEmpty();
+  }
+
+  /**
+   * The steps the other reactor modules declare in their own pom for the hook, in reactor order.
+   * Modules outside of the work tree are left out.
+   */
+  private List<ModuleHookStep> moduleSteps(HookType hookType) {
+    return moduleSteps.computeIfAbsent(hookType, this::readModuleSteps);
+  }
+
+  private List<ModuleHookStep> readModuleSteps(HookType hookType) {
+    List<ModuleHookStep> steps = new ArrayList<>();
+    Path workTree = gitLayout().workTree();
+    if (workTree == null) {
+      return steps;
+    }
+    Path normalizedWorkTree = workTree.toAbsolutePath().normalize();
+    Path executionRoot = gitBaseDir().toAbsolutePath().normalize();
+    List<MavenProject> projects =
+        ofNullable(session.getAllProjects()).orElseGet(session::getProjects);
+    for (MavenProject project : projects) {
+      Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+      if (basedir.equals(executionRoot) || !basedir.startsWith(normalizedWorkTree)) {
+        continue;
+      }
+      steps.addAll(
+          ModuleHookStep.read(
+              project,
+              relativeUnixPath(normalizedWorkTree, basedir),
+              pluginDescriptor.getGroupId(),
+              pluginDescriptor.getArtifactId(),
+              stepsParameter(hookType),
+              session.getUserProperties()));
+    }
+    return steps;
+  }
+
+  /** The name of the steps parameter of the hook, e.g. preCommitSteps */
+  private static String stepsParameter(HookType hookType) {
+    StringBuilder parameter = new StringBuilder();
+    for (String word : hookType.getName().split("-")) {
+      parameter.append(
+          parameter.length() == 0
+              ? word
+              : Character.toUpperCase(word.charAt(0)) + word.substring(1));
+    }
+    return parameter.append("Steps").toString();
+  }
+
+  /**
+   * The commands of the hook: its content, if any, followed by its configured steps. Steps without
+   * name are named after their position.
+   */
+  private List<HookStep> steps(HookType hookType) {
+    List<HookStep> steps = new ArrayList<>();
+    String hookContent = hookType.hookContentGetter.apply(this);
+    if (StringUtils.isNotBlank(hookContent)) {
+      steps.add(
+          new HookStep(
+              hookType.getName(), hookContent, hookType.commandMavenPrefixGetter.apply(this)));
+    }
+    HookStep[] configuredSteps =
+        ofNullable(hookType.stepsGetter.apply(this)).orElse(new HookStep[0]);
+    for (int i = 0; i < configuredSteps.length; i++) {
+      HookStep step = configuredSteps[i];
+      if (StringUtils.isBlank(step.getCommand())) {
+        throw new MavenGitHookException(
+            "Step " + (i + 1) + " of the " + hookType.getName() + " hook has no command");
+      }
+      String name = StringUtils.defaultIfBlank(step.getName(), "step-" + (i + 1)).trim();
+      steps.add(
+          new HookStep(
+              name,
+              step.getCommand(),
+              step.getMavenPrefix(),
+              step.getTimeout(),
+              step.getTimeBudget(),
+              step.getIncludes(),
+              step.getExcludes()));
+    }
+    return steps;
+  }
+
+  /** True if one of the hook commands runs through maven */
+  private boolean usesMaven(HookType hookType) {
+    boolean commandMavenPrefix = hookType.commandMavenPrefixGetter.apply(this);
+    return Stream.concat(
+            steps(hookType).stream(), moduleSteps(hookType).stream().map(ModuleHookStep::step))
+        .anyMatch(step -> ofNullable(step.getMavenPrefix()).orElse(commandMavenPrefix));
+  }
+
+  private boolean usesMavenDaemon() {
+    return !debug
+        && Stream.of(HookType.values())
+            .anyMatch(hookType -> hookType.mavenDaemonGetter.apply(this) && usesMaven(hookType));
+  }
+
+  /** The Maven Daemon client the hook runs through, or null if it runs mvn */
+  private Path mavenDaemonExecutable(HookType hookType) {
+    if (!hookType.mavenDaemonGetter.apply(this)) {
+      return null;
+    }
+    if (debug) {
+      getLog()
+          .info("Debug mode: the " + hookType.getName() + " hook runs mvnDebug instead of mvnd");
+      return null;
+    }
+    Path mavenDaemonExecutable = findMavenDaemonExecutable();
+    if (mavenDaemonExecutable == null) {
+      getLog().warn("No mvnd executable found: the " + hookType.getName() + " hook runs mvn");
+    }
+    return mavenDaemonExecutable;
+  }
+
+  /**
+   * Starts a detached build on the Maven Daemon, which keeps the daemon alive for the next hooks.
+   * The log of the last warm-up doubles as a timestamp throttling warm-ups.
+   */
+  private void warmUpMavenDaemon() {
+    if (!mavenDaemonWarmUp || !usesMavenDaemon()) {
+      return;
+    }
+    Path mavenDaemonExecutable = findMavenDaemonExecutable();
+    if (mavenDaemonExecutable == null) {
+      return;
+    }
+    Path logFile = pluginDirectory().resolve(MAVEN_DAEMON_WARM_UP_LOG_FILE);
+    File warmUpLog = logFile.toFile();
+    if (System.currentTimeMillis() - warmUpLog.lastModified()
+        < MAVEN_DAEMON_WARM_UP_INTERVAL_MILLIS) {
+      getLog().debug("Maven Daemon warmed up recently, see " + logFile);
+      return;
+    }
+
+    List<String> command = new ArrayList<>();
+    command.add(mavenDaemonExecutable.toString());
+    Stream.of(ofNullable(mavenDaemonArgs).orElse(new String[0]))
+        .filter(StringUtils::isNotBlank)
+        .map(String::trim)
+        .forEach(command::add);
+    command.addAll(
+        Arrays.asList(
+            "-f", pomFile().toAbsolutePath().toString(), "-q", "-Dghmp.skip=true", "validate"));
+    try {
+      Files.createDirectories(logFile.getParent());
+      Process process =
+          new ProcessBuilder(command)
+              .directory(gitBaseDir().toFile())
+              .redirectErrorStream(true)
+              .redirectOutput(ProcessBuilder.Redirect.to(warmUpLog))
+              .start();
+      process.getOutputStream().close();
+      getLog().info("Warming up the Maven Daemon in the background, see " + logFile);
+    } catch (IOException e) {
+      getLog().warn("Failed to warm up the Maven Daemon: " + e.getMessage());
+    }
+  }
+
+  /** The Maven Daemon client, or null if it is not installed */
+  private Path findMavenDaemonExecutable() {
+    return phaseTimer.time(
+        "maven-executables", () -> mavenEnvironment().getMavenDaemonExecutable().orElse(null));
+  }
+
+  private MavenEnvironment mavenEnvironment() {
+    if (mavenEnvironment == null) {
+      mavenEnvironment =
+          new MavenEnvironment(
+              this::getLog,
+              pluginDirectory().resolve(MAVEN_EXECUTABLE_CACHE_FILE),
+              mavenExecutableValidation);
+    }
+    return mavenEnvironment;
+  }
+
+  /**
+   * The execution root directory relative to the work tree, empty when they are the same. Paths
+   * below it that no other module owns affect the whole reactor.
+   */
+  private String rootModuleDirectory() {
+    Path workTree = gitLayout().workTree();
+    if (workTree == null) {
+      return "";
+    }
+    return relativeUnixPath(
+        workTree.toAbsolutePath().normalize(), gitBaseDir().toAbsolutePath().normalize());
+  }
+
+  /**
+   * The directory of each reactor module relative to the work tree, mapped to its '-pl' selector.
+   * Modules outside of the work tree can't be affected by a push and are left out, as well as the
+   * execution root.
+   */
+  private Map<String, String> reactorModules() {
+    Map<String, String> modules = new TreeMap<>();
+    Path workTree = gitLayout().workTree();
+    if (workTree == null) {
+      return modules;
+    }
+    Path normalizedWorkTree = workTree.toAbsolutePath().normalize();
+    Path executionRoot = gitBaseDir().toAbsolutePath().normalize();
+    List<MavenProject> projects =
+        ofNullable(session.getAllProjects()).orElseGet(session::getProjects);
+    for (MavenProject project : projects) {
+      Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+      if (basedir.equals(executionRoot) || !basedir.startsWith(normalizedWorkTree)) {
+        continue;
+      }
+      modules.put(
+          relativeUnixPath(normalizedWorkTree, basedir),
+          project.getGroupId() + ":" + project.getArtifactId());
+    }
+    return modules;
+  }
+
+  private static String relativeUnixPath(Path from, Path to) {
+    return from.relativize(to).toString().replace(File.separatorChar, '/');
+  }
+
+  private static void appendShellWords(StringBuilder content, String[] words) {
+    if (words == null) {
+      return;
+    }
+    for (String word : words) {
+      if (word != null && !word.trim().isEmpty()) {
+        content.append(" ").append(shellQuote(word.trim()));
+      }
+    }
+  }
+
+  /** Quotes a value as a single literal bash word */
+  private static String shellQuote(String value) {
+    return "'" + value.replace("'", "'\\''") + "'";
   }
 
   private String unixifyPath(Path path) {
-    String result = path.toAbsolutePath().toString();
-    return "\"" + result.replace("\\", "/") + "\"";
+    return "\"" + unixPath(path.toAbsolutePath()) + "\"";
+  }
+
+  private static String unixPath(Path path) {
+    return path.toString().replace("\\", "/");
   }
 
   private void addEnvironmentVariables(StringBuilder content, HookType hookType) {
@@ -360,14 +1900,33 @@ public class InstallHooksMojo extends AbstractMavenGitHookMojo {
     return hooksDirectory;
   }
 
-  private String hookBaseScriptCall(HookType hookType) {
-    return "$(git rev-parse --git-dir)/" + HOOKS_DIR + "/" + pluginHookFileName(hookType);
+  /** The plugin hook lives next to the base script, wherever core.hooksPath points to */
+  private static String hookBaseScriptCall(String pluginHookFileName) {
+    return "$(dirname \"$0\")/" + pluginHookFileName;
+  }
+
+  /** The call installed by previous versions, which ignored core.hooksPath and worktrees */
+  private static String legacyHookBaseScriptCall(String pluginHookFileName) {
+    return "$(git rev-parse --git-dir)/" + HOOKS_DIR + "/" + pluginHookFileName;
   }
 
   private String pluginHookFileName(HookType hookType) {
     return artifactId() + "." + hookType.getPluginHookFile();
   }
 
+  /** The plugin hook called by a base script which does not belong to a {@link HookType} */
+  private String baseScriptHookFileName(String baseScript) {
+    return artifactId() + ".git-hook." + baseScript + ".sh";
+  }
+
+  private String runtimeFileName() {
+    return artifactId() + "." + RUNTIME_FILE;
+  }
+
+  private String manifestFileName() {
+    return artifactId() + "." + MANIFEST_FILE;
+  }
+
   private String pluginPreCommitHookFileName() {
     return pluginHookFileName(HookType.PRE_COMMIT);
   }
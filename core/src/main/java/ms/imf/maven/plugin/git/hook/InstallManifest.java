@@ -0,0 +1,99 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Properties;
+import java.util.TreeMap;
+
+/**
+ * Records what the last installation produced: the fingerprint of its inputs and the digest of
+ * every file it wrote. When both still match, a new installation would be a no-op.
+ */
+final class InstallManifest {
+
+  private static final String FINGERPRINT_KEY = "fingerprint";
+  private static final String FILE_KEY_PREFIX = "file.";
+
+  private final String fingerprint;
+  private final Map<String, String> fileDigests;
+
+  private InstallManifest(String fingerprint, Map<String, String> fileDigests) {
+    this.fingerprint = requireNonNull(fingerprint);
+    this.fileDigests = requireNonNull(fileDigests);
+  }
+
+  /** Reads the manifest stored in the given file, or returns null if there is none */
+  static InstallManifest read(Path manifestFile) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream inputStream = Files.newInputStream(manifestFile)) {
+      properties.load(inputStream);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    String fingerprint = properties.getProperty(FINGERPRINT_KEY);
+    if (fingerprint == null) {
+      return null;
+    }
+    Map<String, String> fileDigests = new TreeMap<>();
+    for (String key : properties.stringPropertyNames()) {
+      if (key.startsWith(FILE_KEY_PREFIX)) {
+        fileDigests.put(key.substring(FILE_KEY_PREFIX.length()), properties.getProperty(key));
+      }
+    }
+    return new InstallManifest(fingerprint, fileDigests);
+  }
+
+  /**
+   * @param fingerprint The fingerprint of the installation inputs
+   * @param directory The directory the recorded files are relative to
+   * @param files The installed files to record
+   */
+  static InstallManifest of(String fingerprint, Path directory, Collection<Path> files)
+      throws IOException {
+    Map<String, String> fileDigests = new TreeMap<>();
+    for (Path file : files) {
+      fileDigests.put(
+          directory.relativize(file).toString(), Fingerprint.sha256(Files.readAllBytes(file)));
+    }
+    return new InstallManifest(fingerprint, fileDigests);
+  }
+
+  /**
+   * @param fingerprint The fingerprint of the current installation inputs
+   * @param directory The directory the recorded files are relative to
+   * @return True if the inputs are unchanged and every recorded file still has its recorded
+   *     content. Only reads the file system.
+   */
+  boolean isUpToDate(String fingerprint, Path directory) throws IOException {
+    if (!this.fingerprint.equals(fingerprint)) {
+      return false;
+    }
+    for (Map.Entry<String, String> fileDigest : fileDigests.entrySet()) {
+      Path file = directory.resolve(fileDigest.getKey());
+      if (!Files.isRegularFile(file)) {
+        return false;
+      }
+      if (!fileDigest.getValue().equals(Fingerprint.sha256(Files.readAllBytes(file)))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  void write(Path manifestFile) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(FINGERPRINT_KEY, fingerprint);
+    fileDigests.forEach((file, digest) -> properties.setProperty(FILE_KEY_PREFIX + file, digest));
+    try (OutputStream outputStream = Files.newOutputStream(manifestFile)) {
+      properties.store(outputStream, "Generated by git-hook-maven-plugin. Do not edit.");
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Properties;
+
+/**
+ * Records the build files an installation was made from, next to the manifest it wrote. Checking
+ * it neither resolves the git layout nor reads the installed files, so that builds stay cheap while
+ * the hooks are reinstalled on checkout.
+ */
+final class InstallStamp {
+
+  private static final String BUILD_FILES_KEY = "buildFiles";
+  private static final String MANIFEST_KEY = "manifest";
+
+  private final String buildFiles;
+  private final Path manifestFile;
+
+  InstallStamp(String buildFiles, Path manifestFile) {
+    this.buildFiles = requireNonNull(buildFiles);
+    this.manifestFile = requireNonNull(manifestFile);
+  }
+
+  /** Reads the stamp stored in the given file, or returns null if there is none */
+  static InstallStamp read(Path stampFile) throws IOException {
+    Properties properties = new Properties();
+    try (InputStream inputStream = Files.newInputStream(stampFile)) {
+      properties.load(inputStream);
+    } catch (NoSuchFileException e) {
+      return null;
+    }
+    String buildFiles = properties.getProperty(BUILD_FILES_KEY);
+    String manifestFile = properties.getProperty(MANIFEST_KEY);
+    if (buildFiles == null || manifestFile == null) {
+      return null;
+    }
+    return new InstallStamp(buildFiles, Paths.get(manifestFile));
+  }
+
+  /**
+   * @param buildFiles The fingerprint of the current build files
+   * @return True if the build files are unchanged and the installation manifest still exists
+   */
+  boolean isUpToDate(String buildFiles) {
+    return this.buildFiles.equals(buildFiles) && Files.isRegularFile(manifestFile);
+  }
+
+  void write(Path stampFile) throws IOException {
+    Properties properties = new Properties();
+    properties.setProperty(BUILD_FILES_KEY, buildFiles);
+    properties.setProperty(MANIFEST_KEY, manifestFile.toString());
+    Files.createDirectories(stampFile.getParent());
+    try (OutputStream outputStream = Files.newOutputStream(stampFile)) {
+      properties.store(outputStream, "Generated by git-hook-maven-plugin. Do not edit.");
+    }
+  }
+}
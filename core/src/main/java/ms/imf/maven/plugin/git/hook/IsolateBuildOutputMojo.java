@@ -0,0 +1,84 @@
+package ms.imf.maven.plugin.git.hook;
+
+import java.io.File;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Reporting;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Moves the build output of the current project under another directory, for the goals and phases
+ * that follow in the same Maven run. The hooks run it first when {@code hookIsolatedBuildOutput} is
+ * enabled, so that their builds keep an incremental state of their own and leave the project {@code
+ * target} directory to the IDE.
+ *
+ * <p>Project paths are kept relative to the work tree under the directory. Plugin configurations
+ * naming build paths explicitly in the pom are not moved.
+ */
+@Mojo(name = "isolate-build-output", threadSafe = true)
+public class IsolateBuildOutputMojo extends AbstractMavenGitHookMojo {
+
+  /** The directory receiving the build output. The build output stays in place when empty. */
+  @Parameter(property = "ghmp.isolatedBuildOutput")
+  private File isolatedBuildOutput;
+
+  public void execute() {
+    if (isolatedBuildOutput == null || isolatedBuildOutput.getPath().trim().isEmpty()) {
+      getLog().debug("No isolated build output directory. Do not execute.");
+      return;
+    }
+    MavenProject project = currentProject();
+    Build build = project.getBuild();
+    Path previous = Paths.get(build.getDirectory()).toAbsolutePath().normalize();
+    Path directory =
+        isolatedBuildOutput
+            .toPath()
+            .toAbsolutePath()
+            .resolve(projectPath(project))
+            .resolve(previous.getFileName())
+            .normalize();
+    if (directory.equals(previous)) {
+      return;
+    }
+
+    build.setDirectory(directory.toString());
+    build.setOutputDirectory(move(build.getOutputDirectory(), previous, directory));
+    build.setTestOutputDirectory(move(build.getTestOutputDirectory(), previous, directory));
+    Reporting reporting = project.getModel().getReporting();
+    if (reporting != null) {
+      reporting.setOutputDirectory(move(reporting.getOutputDirectory(), previous, directory));
+    }
+    getLog().debug("Building " + project.getId() + " into " + directory);
+  }
+
+  /**
+   * The path of the project under the isolated directory: its path in the work tree, or its
+   * coordinates when it is outside of it
+   */
+  private String projectPath(MavenProject project) {
+    Path basedir = project.getBasedir().toPath().toAbsolutePath().normalize();
+    Path workTree = gitLayout().workTree();
+    if (workTree != null) {
+      Path normalizedWorkTree = workTree.toAbsolutePath().normalize();
+      if (basedir.startsWith(normalizedWorkTree)) {
+        return normalizedWorkTree.relativize(basedir).toString();
+      }
+    }
+    return project.getGroupId() + File.separator + project.getArtifactId();
+  }
+
+  /** Moves a path under the previous build directory to the same place under the new one */
+  private static String move(String path, Path previous, Path directory) {
+    if (path == null) {
+      return null;
+    }
+    Path absolutePath = Paths.get(path).toAbsolutePath().normalize();
+    if (!absolutePath.startsWith(previous)) {
+      return path;
+    }
+    return directory.resolve(previous.relativize(absolutePath)).toString();
+  }
+}
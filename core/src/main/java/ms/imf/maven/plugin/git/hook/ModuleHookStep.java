@@ -0,0 +1,205 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * A hook step declared by a reactor module in its own pom, next to the hook steps of the execution
+ * root. It only runs when the hook changes paths under the module directory.
+ */
+final class ModuleHookStep {
+
+  private static final Pattern EXPRESSION = Pattern.compile("\\$\\{([^}]+)}");
+
+  private final MavenProject module;
+  private final String directory;
+  private final HookStep step;
+
+  private ModuleHookStep(MavenProject module, String directory, HookStep step) {
+    this.module = requireNonNull(module);
+    this.directory = requireNonNull(directory);
+    this.step = requireNonNull(step);
+  }
+
+  /**
+   * Reads the steps a module declares in the configuration of the plugin in its own pom. Steps
+   * inherited from a parent pom are not the module's own and are ignored. Property expressions are
+   * interpolated from the user properties and the module properties.
+   *
+   * @param module The reactor module
+   * @param directory The module directory, relative to the work tree
+   * @param pluginGroupId The group id of the plugin whose configuration declares the steps
+   * @param pluginArtifactId The artifact id of the plugin whose configuration declares the steps
+   * @param parameter The steps parameter, e.g. preCommitSteps
+   */
+  static List<ModuleHookStep> read(
+      MavenProject module,
+      String directory,
+      String pluginGroupId,
+      String pluginArtifactId,
+      String parameter,
+      Properties userProperties) {
+    List<ModuleHookStep> steps = new ArrayList<>();
+    Build build = module.getOriginalModel() == null ? null : module.getOriginalModel().getBuild();
+    if (build == null) {
+      return steps;
+    }
+    for (Plugin declaredPlugin : build.getPlugins()) {
+      if (!Objects.equals(declaredPlugin.getGroupId(), pluginGroupId)
+          || !Objects.equals(declaredPlugin.getArtifactId(), pluginArtifactId)) {
+        continue;
+      }
+      List<Object> configurations = new ArrayList<>();
+      configurations.add(declaredPlugin.getConfiguration());
+      for (PluginExecution execution : declaredPlugin.getExecutions()) {
+        configurations.add(execution.getConfiguration());
+      }
+      for (Object configuration : configurations) {
+        if (!(configuration instanceof Xpp3Dom)) {
+          continue;
+        }
+        Xpp3Dom stepsConfiguration = ((Xpp3Dom) configuration).getChild(parameter);
+        if (stepsConfiguration == null) {
+          continue;
+        }
+        for (Xpp3Dom stepConfiguration : stepsConfiguration.getChildren()) {
+          String command = value(module, userProperties, stepConfiguration, "command");
+          if (command == null || command.trim().isEmpty()) {
+            throw new MavenGitHookException(
+                "A step of " + parameter + " in " + module.getFile() + " has no command");
+          }
+          String name = value(module, userProperties, stepConfiguration, "name");
+          String mavenPrefix = value(module, userProperties, stepConfiguration, "mavenPrefix");
+          String timeout = value(module, userProperties, stepConfiguration, "timeout");
+          String timeBudget = value(module, userProperties, stepConfiguration, "timeBudget");
+          String[] includes = values(module, userProperties, stepConfiguration, "includes");
+          String[] excludes = values(module, userProperties, stepConfiguration, "excludes");
+          HookStep step =
+              new HookStep(
+                  module.getArtifactId()
+                      + "/"
+                      + (name == null || name.trim().isEmpty()
+                          ? "step-" + (steps.size() + 1)
+                          : name.trim()),
+                  command,
+                  mavenPrefix == null ? null : Boolean.valueOf(mavenPrefix.trim()),
+                  timeout == null ? null : Integer.valueOf(timeout.trim()),
+                  timeBudget == null ? null : Integer.valueOf(timeBudget.trim()),
+                  includes,
+                  excludes);
+          steps.add(new ModuleHookStep(module, directory, step));
+        }
+      }
+    }
+    return steps;
+  }
+
+  private static String[] values(
+      MavenProject module, Properties userProperties, Xpp3Dom configuration, String name) {
+    Xpp3Dom child = configuration.getChild(name);
+    if (child == null) {
+      return null;
+    }
+    List<String> values = new ArrayList<>();
+    for (Xpp3Dom item : child.getChildren()) {
+      String value = interpolate(module, userProperties, item.getValue());
+      if (value != null && !value.trim().isEmpty()) {
+        values.add(value.trim());
+      }
+    }
+    return values.toArray(new String[0]);
+  }
+
+  private static String value(
+      MavenProject module, Properties userProperties, Xpp3Dom configuration, String name) {
+    Xpp3Dom child = configuration.getChild(name);
+    return child == null ? null : interpolate(module, userProperties, child.getValue());
+  }
+
+  private static String interpolate(MavenProject module, Properties userProperties, String raw) {
+    if (raw == null) {
+      return null;
+    }
+    Matcher matcher = EXPRESSION.matcher(raw);
+    StringBuffer value = new StringBuffer();
+    while (matcher.find()) {
+      String replacement = resolve(module, userProperties, matcher.group(1));
+      matcher.appendReplacement(
+          value, Matcher.quoteReplacement(replacement == null ? matcher.group() : replacement));
+    }
+    matcher.appendTail(value);
+    return value.toString();
+  }
+
+  private static String resolve(MavenProject module, Properties userProperties, String key) {
+    switch (key) {
+      case "basedir":
+      case "project.basedir":
+        return module.getBasedir().getAbsolutePath();
+      case "project.groupId":
+        return module.getGroupId();
+      case "project.artifactId":
+        return module.getArtifactId();
+      case "project.version":
+        return module.getVersion();
+      default:
+        String value = userProperties.getProperty(key);
+        return value == null ? module.getProperties().getProperty(key) : value;
+    }
+  }
+
+  /** The step, named after the module */
+  HookStep step() {
+    return step;
+  }
+
+  /** The module directory, relative to the work tree */
+  String directory() {
+    return directory;
+  }
+
+  /**
+   * The globs of the changed paths triggering the step, relative to the work tree. The step
+   * includes are relative to the module directory, and default to the whole module.
+   */
+  String[] includes() {
+    String[] includes = step.getIncludes();
+    if (includes == null || includes.length == 0) {
+      return directory.isEmpty() ? new String[0] : new String[] {directory + "/*"};
+    }
+    return inModule(includes);
+  }
+
+  /** The globs of the changed paths never triggering the step, relative to the work tree */
+  String[] excludes() {
+    return inModule(step.getExcludes());
+  }
+
+  private String[] inModule(String[] globs) {
+    if (globs == null || directory.isEmpty()) {
+      return globs;
+    }
+    return Arrays.stream(globs).map(glob -> directory + "/" + glob).toArray(String[]::new);
+  }
+
+  Path pom() {
+    return module.getFile().toPath();
+  }
+
+  Path basedir() {
+    return module.getBasedir().toPath();
+  }
+}
@@ -0,0 +1,77 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * Measures the time spent in named phases. A phase started inside another one is deducted from it,
+ * so that the phase times add up to the measured time. A phase run several times accumulates.
+ */
+final class PhaseTimer {
+
+  private final LongSupplier nanoClock;
+  private final Map<String, Long> nanosByPhase = new LinkedHashMap<>();
+  private final Deque<String> runningPhases = new ArrayDeque<>();
+  private long lastSwitchNanos;
+
+  PhaseTimer() {
+    this(System::nanoTime);
+  }
+
+  PhaseTimer(LongSupplier nanoClock) {
+    this.nanoClock = requireNonNull(nanoClock);
+  }
+
+  <T, E extends Exception> T time(String phase, Phase<T, E> action) throws E {
+    switchTo(phase);
+    try {
+      return action.run();
+    } finally {
+      switchTo(null);
+    }
+  }
+
+  <E extends Exception> void run(String phase, VoidPhase<E> action) throws E {
+    time(
+        phase,
+        () -> {
+          action.run();
+          return null;
+        });
+  }
+
+  /** The time of each phase in nanoseconds, in the order the phases first started */
+  Map<String, Long> nanosByPhase() {
+    return Collections.unmodifiableMap(nanosByPhase);
+  }
+
+  /** Charges the time elapsed since the last switch to the running phase, then enters or leaves */
+  private void switchTo(String startedPhase) {
+    long now = nanoClock.getAsLong();
+    String runningPhase = runningPhases.peek();
+    if (runningPhase != null) {
+      nanosByPhase.merge(runningPhase, now - lastSwitchNanos, Long::sum);
+    }
+    if (startedPhase == null) {
+      runningPhases.pop();
+    } else {
+      nanosByPhase.putIfAbsent(startedPhase, 0L);
+      runningPhases.push(startedPhase);
+    }
+    lastSwitchNanos = now;
+  }
+
+  interface Phase<T, E extends Exception> {
+    T run() throws E;
+  }
+
+  interface VoidPhase<E extends Exception> {
+    void run() throws E;
+  }
+}
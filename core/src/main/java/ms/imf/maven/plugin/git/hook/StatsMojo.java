@@ -0,0 +1,64 @@
+package ms.imf.maven.plugin.git.hook;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.List;
+import java.util.Locale;
+import ms.imf.maven.plugin.git.hook.telemetry.HookRun;
+import ms.imf.maven.plugin.git.hook.telemetry.HookRunLog;
+import ms.imf.maven.plugin.git.hook.telemetry.HookRunStatistics;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugins.annotations.Mojo;
+
+/**
+ * Reports the durations of the hook runs recorded on this repository: per hook, then per step, the
+ * number of runs and failures, the median, the 95th percentile and the maximum.
+ */
+@Mojo(name = "stats", threadSafe = true)
+public class StatsMojo extends AbstractMavenGitHookMojo {
+
+  private static final String ROW_FORMAT = "%-16s %-24s %6s %6s %9s %9s %9s";
+
+  public void execute() throws MojoExecutionException {
+    if (!isExecutionRoot()) {
+      getLog().debug("Not in execution root. Do not execute.");
+      return;
+    }
+
+    HookRunLog hookRunLog = new HookRunLog(pluginDirectory());
+    List<HookRun> runs;
+    try {
+      runs = hookRunLog.read();
+    } catch (IOException e) {
+      throw new MojoExecutionException("Failed to read " + hookRunLog, e);
+    }
+    if (runs.isEmpty()) {
+      getLog().info("No hook run recorded in " + hookRunLog);
+      return;
+    }
+
+    long since = runs.stream().mapToLong(HookRun::time).min().getAsLong();
+    getLog().info("Hook runs recorded in " + hookRunLog + " since " + Instant.ofEpochMilli(since));
+    getLog().info(row("HOOK", "STEP", "RUNS", "FAILED", "P50", "P95", "MAX"));
+    for (HookRunStatistics statistics : HookRunStatistics.of(runs)) {
+      getLog()
+          .info(
+              row(
+                  statistics.hook(),
+                  statistics.step() == null ? "-" : statistics.step(),
+                  String.valueOf(statistics.count()),
+                  String.valueOf(statistics.failures()),
+                  seconds(statistics.p50Millis()),
+                  seconds(statistics.p95Millis()),
+                  seconds(statistics.maxMillis())));
+    }
+  }
+
+  private static String row(Object... columns) {
+    return String.format(Locale.ROOT, ROW_FORMAT, columns);
+  }
+
+  private static String seconds(long millis) {
+    return String.format(Locale.ROOT, "%.2fs", millis / 1000.0);
+  }
+}
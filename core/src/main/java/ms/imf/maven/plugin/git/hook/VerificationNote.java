@@ -0,0 +1,162 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.Properties;
+import java.util.TreeSet;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.model.PluginExecution;
+import org.apache.maven.project.MavenProject;
+import org.codehaus.plexus.util.xml.Xpp3Dom;
+
+/**
+ * A verification recorded by a hook as a git note of a pushed commit: the tree the hook verified,
+ * the fingerprint of the hook configuration, the duration and the result. The runtime writes each
+ * record as lines of 'Key: value', records being separated by blank lines when notes are merged:
+ *
+ * <pre>
+ * Signed-off-by-hook: pre-push
+ * Tree: 4b825dc642cb6eb9a060e54bf8d69288fbee4904
+ * Fingerprint: 9f2c...
+ * Duration-Millis: 5230
+ * Result: passed
+ * </pre>
+ */
+final class VerificationNote {
+
+  static final String DEFAULT_REF = "refs/notes/git-hook-maven-plugin";
+  static final String PASSED = "passed";
+  static final String PRE_PUSH_PARAMETER_PREFIX = "prePush";
+
+  private static final String HOOK_KEY = "Signed-off-by-hook";
+  private static final String TREE_KEY = "Tree";
+  private static final String FINGERPRINT_KEY = "Fingerprint";
+  private static final String DURATION_KEY = "Duration-Millis";
+  private static final String RESULT_KEY = "Result";
+
+  private final String hook;
+  private final String tree;
+  private final String fingerprint;
+  private final long durationMillis;
+  private final String result;
+
+  private VerificationNote(
+      String hook, String tree, String fingerprint, long durationMillis, String result) {
+    this.hook = requireNonNull(hook);
+    this.tree = requireNonNull(tree);
+    this.fingerprint = requireNonNull(fingerprint);
+    this.durationMillis = durationMillis;
+    this.result = requireNonNull(result);
+  }
+
+  /** Parses the records of a note. Incomplete records are ignored. */
+  static List<VerificationNote> parse(String note) {
+    List<VerificationNote> records = new ArrayList<>();
+    Properties fields = new Properties();
+    for (String line : (note + "\n\n").split("\r?\n", -1)) {
+      int separator = line.indexOf(':');
+      if (separator > 0) {
+        fields.setProperty(
+            line.substring(0, separator).trim(), line.substring(separator + 1).trim());
+        continue;
+      }
+      if (!line.trim().isEmpty() || fields.isEmpty()) {
+        continue;
+      }
+      String hook = fields.getProperty(HOOK_KEY);
+      String tree = fields.getProperty(TREE_KEY);
+      String fingerprint = fields.getProperty(FINGERPRINT_KEY);
+      String result = fields.getProperty(RESULT_KEY);
+      if (hook != null && tree != null && fingerprint != null && result != null) {
+        long durationMillis;
+        try {
+          durationMillis = Long.parseLong(fields.getProperty(DURATION_KEY, "0"));
+        } catch (NumberFormatException e) {
+          durationMillis = 0;
+        }
+        records.add(new VerificationNote(hook, tree, fingerprint, durationMillis, result));
+      }
+      fields.clear();
+    }
+    return records;
+  }
+
+  /**
+   * The fingerprint of the configuration of a hook, shared by every clone of the repository: the
+   * plugin version, then the parameters of the hook, as written in the poms of the reactor or given
+   * on the command line. Paths of the local environment are left out, so that the continuous
+   * integration computes the fingerprint of the developer hook.
+   *
+   * @param pluginId The plugin coordinates, version included
+   * @param projects The reactor projects
+   * @param hook The hook name, e.g. pre-push
+   * @param parameterPrefix The prefix of the hook parameters, e.g. prePush
+   * @param userProperties The properties given on the command line
+   */
+  static String fingerprint(
+      String pluginId,
+      Collection<MavenProject> projects,
+      String hook,
+      String parameterPrefix,
+      Properties userProperties) {
+    String[] coordinates = pluginId.split(":");
+    Fingerprint fingerprint = new Fingerprint().add("plugin", pluginId).add("hook", hook);
+    for (MavenProject project : projects) {
+      Build build =
+          project.getOriginalModel() == null ? null : project.getOriginalModel().getBuild();
+      if (build == null) {
+        continue;
+      }
+      List<Plugin> plugins = new ArrayList<>(build.getPlugins());
+      if (build.getPluginManagement() != null) {
+        plugins.addAll(build.getPluginManagement().getPlugins());
+      }
+      for (Plugin plugin : plugins) {
+        if (!Objects.equals(plugin.getGroupId(), coordinates[0])
+            || !Objects.equals(plugin.getArtifactId(), coordinates[1])) {
+          continue;
+        }
+        List<Object> configurations = new ArrayList<>();
+        configurations.add(plugin.getConfiguration());
+        for (PluginExecution execution : plugin.getExecutions()) {
+          configurations.add(execution.getConfiguration());
+        }
+        for (Object configuration : configurations) {
+          if (!(configuration instanceof Xpp3Dom)) {
+            continue;
+          }
+          for (Xpp3Dom parameter : ((Xpp3Dom) configuration).getChildren()) {
+            if (parameter.getName().startsWith(parameterPrefix)) {
+              fingerprint.add(
+                  project.getGroupId() + ":" + project.getArtifactId() + ":" + parameter.getName(),
+                  parameter.toString());
+            }
+          }
+        }
+      }
+    }
+    for (String name : new TreeSet<>(userProperties.stringPropertyNames())) {
+      if (name.startsWith("ghmp." + parameterPrefix)) {
+        fingerprint.add(name, userProperties.getProperty(name));
+      }
+    }
+    return fingerprint.toHex();
+  }
+
+  /** True if the record is a success of the given hook on the given tree and configuration */
+  boolean verifies(String hook, String tree, String fingerprint) {
+    return this.hook.equals(hook)
+        && this.tree.equals(tree)
+        && this.fingerprint.equals(fingerprint)
+        && PASSED.equals(result);
+  }
+
+  long durationMillis() {
+    return durationMillis;
+  }
+}
@@ -1,5 +1,6 @@
 package ms.imf.maven.plugin.git.hook.executable;
 
+import java.time.Duration;
 import org.apache.commons.lang3.StringUtils;
 
 /**
@@ -8,6 +9,7 @@ import org.apache.commons.lang3.StringUtils;
 public class CommandRunException extends RuntimeException {
 
   private final int exitCode;
+  private final boolean timedOut;
 
   public CommandRunException(int exitCode, String output, String... command) {
     super(
@@ -15,9 +17,23 @@ public class CommandRunException extends RuntimeException {
             "'%s' failed with code %s: \n\n %s",
             StringUtils.join(command, StringUtils.SPACE), exitCode, output));
     this.exitCode = exitCode;
+    this.timedOut = false;
+  }
+
+  public CommandRunException(Duration timeout, String output, String... command) {
+    super(
+        String.format(
+            "'%s' timed out after %s ms: \n\n %s",
+            StringUtils.join(command, StringUtils.SPACE), timeout.toMillis(), output));
+    this.exitCode = -1;
+    this.timedOut = true;
   }
 
   public int getExitCode() {
     return exitCode;
   }
+
+  public boolean isTimedOut() {
+    return timedOut;
+  }
 }
@@ -1,11 +1,21 @@
 package ms.imf.maven.plugin.git.hook.executable;
 
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Map;
 
 /**
  * @author Réda Housni Alaoui
  */
 public interface CommandRunner {
-  String run(Path workingDir, Map<String, String> environment, String... command);
+
+  default String run(Path workingDir, Map<String, String> environment, String... command) {
+    return run(workingDir, environment, null, command);
+  }
+
+  /**
+   * @param timeout The maximum duration of the command. Null to wait indefinitely. On expiry, the
+   *     command and all its descendants are killed.
+   */
+  String run(Path workingDir, Map<String, String> environment, Duration timeout, String... command);
 }
@@ -4,14 +4,21 @@ import static java.util.Objects.requireNonNull;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
 import java.nio.file.attribute.PosixFilePermission;
-import java.util.Collections;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
 import java.util.Set;
 import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import ms.imf.maven.plugin.git.hook.MavenGitHookException;
@@ -25,6 +32,7 @@ import org.apache.maven.plugin.logging.Log;
 class DefaulExecutable implements Executable {
 
   private static final String SHIBANG = "#!/bin/bash";
+  private static final String LINE_SEPARATOR = System.lineSeparator();
 
   private final Supplier<Log> log;
   private final Path file;
@@ -61,8 +69,7 @@ class DefaulExecutable implements Executable {
 
   @Override
   public Executable truncate() throws IOException {
-    log.get().debug("Truncating '" + file + "'");
-    Files.write(file, Collections.singleton(SHIBANG), StandardOpenOption.TRUNCATE_EXISTING);
+    edit().truncate().apply();
     return this;
   }
 
@@ -72,43 +79,46 @@ class DefaulExecutable implements Executable {
     try (InputStream inputStream = template.get()) {
       String rawContent = IOUtils.toString(inputStream, sourceEncoding);
       Object[] refinedValues = Stream.of(values).map(this::unixifyPath).toArray();
-      String content = String.format(rawContent, refinedValues);
-      Files.write(file, content.getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
+      edit().write(String.format(rawContent, refinedValues)).apply();
     }
     return this;
   }
 
   @Override
-  public Executable appendCommandCall(String commandCall) throws IOException {
-    String unixCommandCall = unixifyPath(commandCall, true);
-    boolean callExists =
-        Files.readAllLines(file).stream().anyMatch(s -> s.contains(unixCommandCall));
-    if (callExists) {
-      log.get().debug("Command call already exists in " + file);
-    } else {
-      log.get().debug("No command call found in " + file);
-      log.get().debug("Appending the command call to " + file);
-      Files.write(file, Collections.singletonList(unixCommandCall), StandardOpenOption.APPEND);
-      log.get().debug("Appended the command call to " + file);
-    }
+  public Executable appendCommandCall(String commandCall, String arguments) throws IOException {
+    edit().appendCommandCall(commandCall, arguments).apply();
     return this;
   }
 
   @Override
-  public Executable removeCommandCall(String commandCall) {
-    String unixCommandCall = unixifyPath(commandCall, true);
+  public Executable removeCommandCall(String commandCall, String arguments) {
     try {
-      List<String> linesToKeep =
-          Files.readAllLines(file).stream()
-              .filter(line -> !unixCommandCall.equals(line))
-              .collect(Collectors.toList());
-      Files.write(file, linesToKeep, StandardOpenOption.TRUNCATE_EXISTING);
+      edit().removeCommandCall(commandCall, arguments).apply();
     } catch (IOException e) {
       throw new MavenGitHookException(e);
     }
     return this;
   }
 
+  @Override
+  public Executable write(String content) throws IOException {
+    edit().write(content).apply();
+    return this;
+  }
+
+  @Override
+  public Edit edit() {
+    return new BatchEdit();
+  }
+
+  private String commandCallLine(String commandCall, String arguments) {
+    String line = unixifyPath(commandCall, true);
+    if (arguments == null) {
+      return line;
+    }
+    return line + " " + arguments;
+  }
+
   private String unixifyPath(Object o) {
     return unixifyPath(o, false);
   }
@@ -128,14 +138,123 @@ class DefaulExecutable implements Executable {
     return "\"" + StringUtils.replace(result, "\\", "/") + "\"";
   }
 
-  @Override
-  public Executable write(String content) throws IOException {
-    Files.write(file, content.getBytes(), StandardOpenOption.TRUNCATE_EXISTING);
-    return this;
+  /** Moves the content over the file through a synced temporary file of the same directory */
+  private void replaceAtomically(byte[] content) throws IOException {
+    Path target = Files.isSymbolicLink(file) ? file.toRealPath() : file;
+    Path temporaryFile =
+        Files.createTempFile(
+            target.toAbsolutePath().getParent(), "." + target.getFileName(), ".tmp");
+    try {
+      try (FileChannel channel = FileChannel.open(temporaryFile, StandardOpenOption.WRITE)) {
+        ByteBuffer buffer = ByteBuffer.wrap(content);
+        while (buffer.hasRemaining()) {
+          channel.write(buffer);
+        }
+        channel.force(true);
+      }
+      try {
+        Files.setPosixFilePermissions(temporaryFile, Files.getPosixFilePermissions(target));
+      } catch (UnsupportedOperationException ignored) {
+        // Not a POSIX file system
+      }
+      try {
+        Files.move(
+            temporaryFile,
+            target,
+            StandardCopyOption.ATOMIC_MOVE,
+            StandardCopyOption.REPLACE_EXISTING);
+      } catch (AtomicMoveNotSupportedException e) {
+        log.get().debug("Cannot atomically replace " + target + ": " + e.getMessage());
+        Files.move(temporaryFile, target, StandardCopyOption.REPLACE_EXISTING);
+      }
+    } finally {
+      Files.deleteIfExists(temporaryFile);
+    }
   }
 
   @Override
   public String toString() {
     return file.toString();
   }
+
+  private class BatchEdit implements Edit {
+
+    private final List<UnaryOperator<String>> edits = new ArrayList<>();
+
+    @Override
+    public Edit truncate() {
+      log.get().debug("Truncating '" + file + "'");
+      edits.add(content -> SHIBANG + LINE_SEPARATOR);
+      return this;
+    }
+
+    @Override
+    public Edit write(String newContent) {
+      edits.add(content -> newContent);
+      return this;
+    }
+
+    @Override
+    public Edit appendCommandCall(String commandCall, String arguments) {
+      String unixCommandCall = commandCallLine(commandCall, arguments);
+      edits.add(
+          content -> {
+            if (lines(content).stream().anyMatch(line -> line.contains(unixCommandCall))) {
+              log.get().debug("Command call already exists in " + file);
+              return content;
+            }
+            log.get().debug("Appending the command call to " + file);
+            boolean newLineNeeded = !content.isEmpty() && !content.endsWith("\n");
+            return content
+                + (newLineNeeded ? LINE_SEPARATOR : "")
+                + unixCommandCall
+                + LINE_SEPARATOR;
+          });
+      return this;
+    }
+
+    @Override
+    public Edit removeCommandCall(String commandCall, String arguments) {
+      String unixCommandCall = commandCallLine(commandCall, arguments);
+      edits.add(
+          content -> {
+            List<String> lines = lines(content);
+            if (!lines.contains(unixCommandCall)) {
+              return content;
+            }
+            return lines.stream()
+                .filter(line -> !unixCommandCall.equals(line))
+                .map(line -> line + LINE_SEPARATOR)
+                .collect(Collectors.joining());
+          });
+      return this;
+    }
+
+    @Override
+    public boolean apply() throws IOException {
+      byte[] currentBytes = Files.readAllBytes(file);
+      String content = new String(currentBytes, StandardCharsets.UTF_8);
+      for (UnaryOperator<String> edit : edits) {
+        content = edit.apply(content);
+      }
+      byte[] newBytes = content.getBytes(StandardCharsets.UTF_8);
+      if (Arrays.equals(currentBytes, newBytes)) {
+        log.get().debug(file + " is unchanged");
+        return false;
+      }
+      replaceAtomically(newBytes);
+      log.get().debug("Written " + file);
+      return true;
+    }
+
+    /** The lines of the content, as Files.readAllLines reads them */
+    private List<String> lines(String content) {
+      List<String> lines = new ArrayList<>(Arrays.asList(content.split("\r?\n", -1)));
+      // A final line terminator does not start a line
+      if (lines.get(lines.size() - 1).isEmpty()) {
+        lines.remove(lines.size() - 1);
+      }
+      return lines;
+    }
+  }
 }
@@ -1,54 +1,144 @@
 package ms.imf.maven.plugin.git.hook.executable;
 
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.lang.reflect.Method;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import ms.imf.maven.plugin.git.hook.MavenGitHookException;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.maven.plugin.logging.Log;
 
 /**
+ * Runs commands while draining stdout and stderr concurrently, so that a child filling either pipe
+ * never blocks. Lines are forwarded to the log as they arrive and only a bounded tail of them is
+ * kept in memory.
+ *
  * @author Réda Housni Alaoui
  */
 public class DefaultCommandRunner implements CommandRunner {
+
+  private static final int DEFAULT_TAIL_LINES = 200;
+  private static final long DRAIN_GRACE_MILLIS = 1000;
+
   private final Supplier<Log> log;
+  private final int tailLines;
 
   public DefaultCommandRunner(Supplier<Log> log) {
+    this(log, DEFAULT_TAIL_LINES);
+  }
+
+  /**
+   * @param tailLines The number of output lines kept for the result and failure messages
+   */
+  public DefaultCommandRunner(Supplier<Log> log, int tailLines) {
     this.log = log;
+    this.tailLines = tailLines;
   }
 
+  /**
+   * @return The last lines of the combined output, or null if the command printed nothing
+   */
   @Override
-  public String run(Path workingDir, Map<String, String> environment, String... command) {
-    try {
-      ProcessBuilder processBuilder = new ProcessBuilder(command);
-      processBuilder.environment().putAll(environment);
-      if (workingDir != null) {
-        processBuilder.directory(workingDir.toFile());
-      }
-      processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT);
+  public String run(
+      Path workingDir, Map<String, String> environment, Duration timeout, String... command) {
+    ProcessBuilder processBuilder = new ProcessBuilder(command);
+    processBuilder.environment().putAll(environment);
+    if (workingDir != null) {
+      processBuilder.directory(workingDir.toFile());
+    }
+    processBuilder.redirectInput(ProcessBuilder.Redirect.INHERIT);
 
-      log.get().debug("Executing '" + StringUtils.join(command, StringUtils.SPACE) + "'");
-      Process process = processBuilder.start();
+    log.get().debug("Executing '" + StringUtils.join(command, StringUtils.SPACE) + "'");
+    Process process;
+    try {
+      process = processBuilder.start();
+    } catch (IOException e) {
+      throw new MavenGitHookException(e);
+    }
 
-      String output =
-          IOUtils.toString(process.getInputStream(), StandardCharsets.UTF_8).trim()
-              + IOUtils.toString(process.getErrorStream(), StandardCharsets.UTF_8).trim();
+    OutputTail tail = new OutputTail(tailLines);
+    Thread stdoutDrainer = drain(process.getInputStream(), tail, command[0] + "-stdout");
+    Thread stderrDrainer = drain(process.getErrorStream(), tail, command[0] + "-stderr");
+    try {
+      boolean exited;
+      if (timeout == null) {
+        process.waitFor();
+        exited = true;
+      } else {
+        exited = process.waitFor(timeout.toMillis(), TimeUnit.MILLISECONDS);
+      }
+      if (!exited) {
+        destroyProcessTree(process);
+      }
+      // Orphaned descendants may keep the pipes open, so don't wait on them forever
+      stdoutDrainer.join(DRAIN_GRACE_MILLIS);
+      stderrDrainer.join(DRAIN_GRACE_MILLIS);
 
-      int exitCode = process.waitFor();
+      String output = tail.toString();
+      if (!exited) {
+        throw new CommandRunException(timeout, output, command);
+      }
+      int exitCode = process.exitValue();
       if (exitCode != 0) {
         throw new CommandRunException(exitCode, output, command);
       }
-
-      log.get().debug(output);
       return StringUtils.defaultIfBlank(output, null);
     } catch (InterruptedException e) {
+      destroyProcessTree(process);
       Thread.currentThread().interrupt();
       throw new MavenGitHookException(e);
-    } catch (IOException e) {
-      throw new MavenGitHookException(e);
+    }
+  }
+
+  private Thread drain(InputStream inputStream, OutputTail tail, String name) {
+    Thread drainer =
+        new Thread(
+            () -> {
+              try (BufferedReader reader =
+                  new BufferedReader(new InputStreamReader(inputStream, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                  log.get().debug(line);
+                  tail.add(line);
+                }
+              } catch (IOException e) {
+                log.get().debug("Stopped reading " + name + ": " + e.getMessage());
+              }
+            },
+            name);
+    drainer.setDaemon(true);
+    drainer.start();
+    return drainer;
+  }
+
+  /**
+   * Kills the process and all its descendants. Descendants can only be enumerated since Java 9,
+   * which is looked up reflectively to keep Java 8 compatibility.
+   */
+  private void destroyProcessTree(Process process) {
+    try {
+      Method descendantsMethod = Process.class.getMethod("descendants");
+      Method destroyForciblyMethod =
+          Class.forName("java.lang.ProcessHandle").getMethod("destroyForcibly");
+      List<?> descendants =
+          ((Stream<?>) descendantsMethod.invoke(process)).collect(Collectors.toList());
+      process.destroyForcibly();
+      for (Object descendant : descendants) {
+        destroyForciblyMethod.invoke(descendant);
+      }
+    } catch (ReflectiveOperationException e) {
+      log.get().debug("Cannot kill descendants of " + process + ": " + e.getMessage());
+      process.destroyForcibly();
     }
   }
 }
@@ -25,14 +25,35 @@ public interface Executable {
    *
    * @param commandCall The command call to append to the executable
    */
-  Executable appendCommandCall(String commandCall) throws IOException;
+  default Executable appendCommandCall(String commandCall) throws IOException {
+    return appendCommandCall(commandCall, null);
+  }
+
+  /**
+   * Appends a command call to the executable
+   *
+   * @param commandCall The command call to append to the executable
+   * @param arguments The arguments expression appended verbatim to the call, e.g. "$@". Null for
+   *     none.
+   */
+  Executable appendCommandCall(String commandCall, String arguments) throws IOException;
 
   /**
    * Remove a command call from the executable
    *
    * @param commandCall The command call to remove
    */
-  Executable removeCommandCall(String commandCall);
+  default Executable removeCommandCall(String commandCall) {
+    return removeCommandCall(commandCall, null);
+  }
+
+  /**
+   * Remove a command call from the executable
+   *
+   * @param commandCall The command call to remove
+   * @param arguments The arguments expression of the call to remove. Null for none.
+   */
+  Executable removeCommandCall(String commandCall, String arguments);
 
   /**
    * Write content to the executable file
@@ -40,4 +61,71 @@ public interface Executable {
    * @param content The content to write
    */
   Executable write(String content) throws IOException;
+
+  /**
+   * Starts a batch of edits. The batch reads the file once and writes it once, atomically, when
+   * {@link Edit#apply()} is called.
+   */
+  Edit edit();
+
+  /**
+   * Edits applied in order to the content of the executable. Nothing is read or written before
+   * {@link #apply()}.
+   */
+  interface Edit {
+
+    /** Erase the executable content */
+    Edit truncate();
+
+    /**
+     * Replace the executable content
+     *
+     * @param content The content to write
+     */
+    Edit write(String content);
+
+    /**
+     * Appends a command call, unless the executable already contains it
+     *
+     * @param commandCall The command call to append to the executable
+     */
+    default Edit appendCommandCall(String commandCall) {
+      return appendCommandCall(commandCall, null);
+    }
+
+    /**
+     * Appends a command call, unless the executable already contains it
+     *
+     * @param commandCall The command call to append to the executable
+     * @param arguments The arguments expression appended verbatim to the call, e.g. "$@". Null for
+     *     none.
+     */
+    Edit appendCommandCall(String commandCall, String arguments);
+
+    /**
+     * Remove a command call
+     *
+     * @param commandCall The command call to remove
+     */
+    default Edit removeCommandCall(String commandCall) {
+      return removeCommandCall(commandCall, null);
+    }
+
+    /**
+     * Remove a command call
+     *
+     * @param commandCall The command call to remove
+     * @param arguments The arguments expression of the call to remove. Null for none.
+     */
+    Edit removeCommandCall(String commandCall, String arguments);
+
+    /**
+     * Applies the edits. The new content is written to a temporary file, synced to disk, then moved
+     * over the executable, so that readers see either the old or the new content. Nothing is
+     * written when the content is unchanged.
+     *
+     * @return True if the executable changed
+     */
+    boolean apply() throws IOException;
+  }
 }
@@ -0,0 +1,37 @@
+package ms.imf.maven.plugin.git.hook.executable;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+/** Keeps the last lines of an output, dropping the oldest ones beyond its capacity. */
+class OutputTail {
+
+  private final int capacity;
+  private final Deque<String> lines;
+  private long droppedLines;
+
+  OutputTail(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive");
+    }
+    this.capacity = capacity;
+    this.lines = new ArrayDeque<>(capacity);
+  }
+
+  synchronized void add(String line) {
+    if (lines.size() == capacity) {
+      lines.removeFirst();
+      droppedLines++;
+    }
+    lines.addLast(line);
+  }
+
+  @Override
+  public synchronized String toString() {
+    StringBuilder result = new StringBuilder();
+    if (droppedLines > 0) {
+      result.append("[").append(droppedLines).append(" earlier lines omitted]\n");
+    }
+    return result.append(String.join("\n", lines)).toString().trim();
+  }
+}
@@ -0,0 +1,58 @@
+package ms.imf.maven.plugin.git.hook.git;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.file.Path;
+
+/** Where git keeps the files of a repository, as seen from one of its work trees. */
+public final class GitLayout {
+
+  private final Path gitDirectory;
+  private final Path commonDirectory;
+  private final Path workTree;
+  private final Path hooksDirectory;
+
+  GitLayout(Path gitDirectory, Path commonDirectory, Path workTree, Path hooksDirectory) {
+    this.gitDirectory = requireNonNull(gitDirectory);
+    this.commonDirectory = requireNonNull(commonDirectory);
+    this.workTree = workTree;
+    this.hooksDirectory = requireNonNull(hooksDirectory);
+  }
+
+  /** The git directory of the current work tree, as given by 'git rev-parse --git-dir' */
+  public Path gitDirectory() {
+    return gitDirectory;
+  }
+
+  /**
+   * The directory shared by all work trees, as given by 'git rev-parse --git-common-dir'. Equal to
+   * the git directory outside of linked work trees.
+   */
+  public Path commonDirectory() {
+    return commonDirectory;
+  }
+
+  /** The work tree root, or null for a bare repository */
+  public Path workTree() {
+    return workTree;
+  }
+
+  /** The directory git reads hooks from, honoring core.hooksPath */
+  public Path hooksDirectory() {
+    return hooksDirectory;
+  }
+
+  @Override
+  public String toString() {
+    return "GitLayout{"
+        + "gitDirectory="
+        + gitDirectory
+        + ", commonDirectory="
+        + commonDirectory
+        + ", workTree="
+        + workTree
+        + ", hooksDirectory="
+        + hooksDirectory
+        + '}';
+  }
+}
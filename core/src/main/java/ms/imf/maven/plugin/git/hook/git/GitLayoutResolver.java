@@ -0,0 +1,185 @@
+package ms.imf.maven.plugin.git.hook.git;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+import ms.imf.maven.plugin.git.hook.Fingerprint;
+import ms.imf.maven.plugin.git.hook.MavenGitHookException;
+import org.apache.maven.plugin.logging.Log;
+import org.eclipse.jgit.lib.ConfigConstants;
+import org.eclipse.jgit.lib.Constants;
+import org.eclipse.jgit.lib.Repository;
+import org.eclipse.jgit.storage.file.FileRepositoryBuilder;
+import org.eclipse.jgit.util.FS;
+
+/**
+ * Resolves the {@link GitLayout} of a directory through JGit. Resolutions are memoized for the
+ * lifetime of the plugin class loader, so that every execution in a reactor, and every build of a
+ * resident Maven daemon, shares a single lookup. A memoized resolution is reused as long as the
+ * files it was derived from are unchanged.
+ */
+public class GitLayoutResolver {
+
+  private static final String COMMON_DIR_FILE = "commondir";
+  private static final String GITDIR_FILE = "gitdir";
+  private static final List<String> ENVIRONMENT_VARIABLES =
+      Arrays.asList("GIT_DIR", "GIT_WORK_TREE", "GIT_COMMON_DIR", "GIT_CEILING_DIRECTORIES");
+
+  private static final ConcurrentMap<String, Resolution> RESOLUTIONS = new ConcurrentHashMap<>();
+
+  private final Supplier<Log> log;
+
+  public GitLayoutResolver(Supplier<Log> log) {
+    this.log = requireNonNull(log);
+  }
+
+  public GitLayout resolve(Path directory) {
+    Fingerprint key = new Fingerprint().add("directory", directory.toAbsolutePath().normalize());
+    ENVIRONMENT_VARIABLES.forEach(name -> key.add(name, System.getenv(name)));
+
+    Resolution resolution = RESOLUTIONS.get(key.toHex());
+    if (resolution != null && resolution.isCurrent()) {
+      log.get().debug("Reusing " + resolution.layout);
+      return resolution.layout;
+    }
+    resolution = doResolve(directory);
+    log.get().debug("Resolved " + resolution.layout);
+    RESOLUTIONS.put(key.toHex(), resolution);
+    return resolution.layout;
+  }
+
+  private Resolution doResolve(Path directory) {
+    FileRepositoryBuilder builder =
+        new FileRepositoryBuilder().readEnvironment().findGitDir(directory.toFile());
+    if (builder.getGitDir() == null) {
+      throw new MavenGitHookException("Could not find .git directory from " + directory);
+    }
+    Path gitDirectory = builder.getGitDir().toPath().toAbsolutePath().normalize();
+    Path commonDirectory = readPathFile(gitDirectory, COMMON_DIR_FILE);
+    if (commonDirectory == null) {
+      commonDirectory = gitDirectory;
+    }
+
+    try (Repository repository =
+        new FileRepositoryBuilder()
+            .setGitDir(commonDirectory.toFile())
+            .setMustExist(true)
+            .build()) {
+      Path workTree = null;
+      if (builder.getWorkTree() != null) {
+        workTree = builder.getWorkTree().toPath();
+      } else if (!commonDirectory.equals(gitDirectory)) {
+        // Linked work tree: 'gitdir' points to the '.git' file of the work tree
+        Path dotGitFile = readPathFile(gitDirectory, GITDIR_FILE);
+        workTree = dotGitFile == null ? null : dotGitFile.getParent();
+      } else if (!repository.isBare()) {
+        workTree = repository.getWorkTree().toPath();
+      }
+      if (workTree != null) {
+        workTree = workTree.toAbsolutePath().normalize();
+      }
+
+      String hooksPath =
+          repository
+              .getConfig()
+              .getString(
+                  ConfigConstants.CONFIG_CORE_SECTION, null, ConfigConstants.CONFIG_KEY_HOOKS_PATH);
+      Path hooksDirectory =
+          resolveHooksDirectory(
+              hooksPath, commonDirectory, workTree == null ? commonDirectory : workTree);
+
+      GitLayout layout = new GitLayout(gitDirectory, commonDirectory, workTree, hooksDirectory);
+      List<Path> sources = new ArrayList<>();
+      sources.add(gitDirectory.resolve(COMMON_DIR_FILE));
+      sources.add(commonDirectory.resolve(Constants.CONFIG));
+      if (workTree != null) {
+        sources.add(workTree.resolve(Constants.DOT_GIT));
+      }
+      File userHome = FS.DETECTED.userHome();
+      if (userHome != null) {
+        sources.add(userHome.toPath().resolve(".gitconfig"));
+      }
+      return new Resolution(layout, sources);
+    } catch (IOException e) {
+      throw new MavenGitHookException("Failed to read git repository " + commonDirectory, e);
+    }
+  }
+
+  /**
+   * A relative core.hooksPath is relative to the directory hooks run in: the work tree root, or the
+   * git directory for a bare repository.
+   */
+  private static Path resolveHooksDirectory(
+      String hooksPath, Path commonDirectory, Path hooksWorkingDirectory) {
+    if (hooksPath == null || hooksPath.trim().isEmpty()) {
+      return commonDirectory.resolve(Constants.HOOKS);
+    }
+    String path = hooksPath.trim();
+    if (path.equals("~") || path.startsWith("~/")) {
+      File userHome = FS.DETECTED.userHome();
+      if (userHome != null) {
+        return userHome.toPath().resolve(path.substring(1).replaceFirst("^/", "")).normalize();
+      }
+    }
+    return hooksWorkingDirectory.resolve(Paths.get(path)).toAbsolutePath().normalize();
+  }
+
+  /** Reads a path stored in a git administrative file, relative to the git directory */
+  private static Path readPathFile(Path gitDirectory, String fileName) {
+    Path file = gitDirectory.resolve(fileName);
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+    try {
+      String content = new String(Files.readAllBytes(file), StandardCharsets.UTF_8).trim();
+      if (content.isEmpty()) {
+        return null;
+      }
+      return gitDirectory.resolve(content).toAbsolutePath().normalize();
+    } catch (IOException e) {
+      throw new MavenGitHookException("Failed to read " + file, e);
+    }
+  }
+
+  private static class Resolution {
+
+    private final GitLayout layout;
+    private final List<Path> sources;
+    private final String stamp;
+
+    private Resolution(GitLayout layout, List<Path> sources) {
+      this.layout = layout;
+      this.sources = sources;
+      this.stamp = stamp(sources);
+    }
+
+    boolean isCurrent() {
+      return stamp.equals(stamp(sources));
+    }
+
+    private static String stamp(List<Path> sources) {
+      Fingerprint fingerprint = new Fingerprint();
+      for (Path source : sources) {
+        String modificationTime;
+        try {
+          modificationTime = String.valueOf(Files.getLastModifiedTime(source).toMillis());
+        } catch (IOException e) {
+          modificationTime = null;
+        }
+        fingerprint.add(source.toString(), modificationTime);
+      }
+      return fingerprint.toHex();
+    }
+  }
+}
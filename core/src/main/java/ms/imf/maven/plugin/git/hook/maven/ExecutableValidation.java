@@ -0,0 +1,12 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+/** How a maven executable candidate is recognized as valid. */
+public enum ExecutableValidation {
+  /** Runs the candidate with '--version'. Reliable but starts a JVM per candidate. */
+  COMMAND,
+  /**
+   * Inspects the installation layout around the candidate: the executable itself and a
+   * 'lib/maven-core-*.jar' next to its 'bin' directory. Does not start any process.
+   */
+  LAYOUT
+}
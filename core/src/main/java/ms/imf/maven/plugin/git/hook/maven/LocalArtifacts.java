@@ -0,0 +1,111 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+import static java.util.Objects.requireNonNull;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collection;
+import java.util.Set;
+import java.util.stream.Collectors;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+
+/**
+ * Looks for the artifacts a build declares in a local repository with the default layout. Only the
+ * declared plugins and dependencies are looked for, not their own dependencies.
+ */
+public class LocalArtifacts {
+
+  private final Path basedir;
+
+  public LocalArtifacts(Path basedir) {
+    this.basedir = requireNonNull(basedir);
+  }
+
+  /**
+   * @return The coordinates of the first plugin or dependency of the projects missing from the
+   *     local repository, or null if there is none. Artifacts of the projects themselves are
+   *     ignored, and so are unresolved versions reported as missing.
+   */
+  public String findMissing(Collection<MavenProject> projects) {
+    Set<String> reactorArtifacts =
+        projects.stream()
+            .map(project -> project.getGroupId() + ":" + project.getArtifactId())
+            .collect(Collectors.toSet());
+    for (MavenProject project : projects) {
+      for (Plugin plugin : project.getBuildPlugins()) {
+        String missing =
+            findMissing(
+                reactorArtifacts,
+                plugin.getGroupId(),
+                plugin.getArtifactId(),
+                plugin.getVersion(),
+                null,
+                "jar");
+        if (missing != null) {
+          return missing;
+        }
+        for (Dependency dependency : plugin.getDependencies()) {
+          missing = findMissing(reactorArtifacts, dependency);
+          if (missing != null) {
+            return missing;
+          }
+        }
+      }
+      for (Dependency dependency : project.getDependencies()) {
+        String missing = findMissing(reactorArtifacts, dependency);
+        if (missing != null) {
+          return missing;
+        }
+      }
+    }
+    return null;
+  }
+
+  private String findMissing(Set<String> reactorArtifacts, Dependency dependency) {
+    if ("system".equals(dependency.getScope())) {
+      return null;
+    }
+    String type = dependency.getType();
+    return findMissing(
+        reactorArtifacts,
+        dependency.getGroupId(),
+        dependency.getArtifactId(),
+        dependency.getVersion(),
+        "test-jar".equals(type) ? "tests" : dependency.getClassifier(),
+        "pom".equals(type) ? "pom" : "jar");
+  }
+
+  private String findMissing(
+      Set<String> reactorArtifacts,
+      String groupId,
+      String artifactId,
+      String version,
+      String classifier,
+      String extension) {
+    if (reactorArtifacts.contains(groupId + ":" + artifactId)) {
+      return null;
+    }
+    String coordinates = groupId + ":" + artifactId + ":" + version;
+    if (version == null || version.isEmpty() || version.matches(".*[\\[\\]()$,].*")) {
+      return coordinates;
+    }
+    Path directory = basedir;
+    for (String groupIdPart : groupId.split("\\.")) {
+      directory = directory.resolve(groupIdPart);
+    }
+    directory = directory.resolve(artifactId).resolve(version);
+    String baseName = artifactId + "-" + version;
+    String fileName =
+        baseName
+            + (classifier == null || classifier.isEmpty() ? "" : "-" + classifier)
+            + "."
+            + extension;
+    if (Files.isRegularFile(directory.resolve(baseName + ".pom"))
+        && Files.isRegularFile(directory.resolve(fileName))) {
+      return null;
+    }
+    return coordinates;
+  }
+}
@@ -2,14 +2,26 @@ package ms.imf.maven.plugin.git.hook.maven;
 
 import static java.util.Objects.requireNonNull;
 
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Duration;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.function.Supplier;
 import java.util.function.UnaryOperator;
+import ms.imf.maven.plugin.git.hook.Fingerprint;
 import ms.imf.maven.plugin.git.hook.MavenGitHookException;
 import ms.imf.maven.plugin.git.hook.executable.CommandRunner;
 import ms.imf.maven.plugin.git.hook.executable.DefaultCommandRunner;
@@ -23,65 +35,241 @@ import org.apache.maven.plugin.logging.Log;
 public class MavenEnvironment {
 
   private static final String MAVEN_HOME_PROP = "maven.home";
+  private static final String PATH_ENV = "PATH";
+  private static final String MVND_HOME_ENV = "MVND_HOME";
+  private static final String MAVEN_LIB_DIRECTORY = "lib";
+  private static final String MAVEN_DAEMON_LIB_DIRECTORY = "mvn/lib";
+  private static final String NO_EXECUTABLE = "";
+  private static final Duration VERSION_COMMAND_TIMEOUT = Duration.ofMinutes(1);
 
   private final Supplier<Log> log;
   private final UnaryOperator<String> systemProperties;
+  private final UnaryOperator<String> environment;
   private final CommandRunner commandRunner;
+  private final MavenExecutableCache cache;
+  private final ExecutableValidation validation;
 
   public MavenEnvironment(Supplier<Log> log) {
-    this(log, System::getProperty, new DefaultCommandRunner(log));
+    this(log, null, ExecutableValidation.COMMAND);
+  }
+
+  /**
+   * @param cacheFile The file persisting resolved executables across builds. Null to disable the
+   *     cache.
+   * @param validation How executable candidates are validated
+   */
+  public MavenEnvironment(Supplier<Log> log, Path cacheFile, ExecutableValidation validation) {
+    this(
+        log,
+        System::getProperty,
+        System::getenv,
+        new DefaultCommandRunner(log),
+        cacheFile,
+        validation);
   }
 
   MavenEnvironment(
       Supplier<Log> log, UnaryOperator<String> systemProperties, CommandRunner commandRunner) {
+    this(log, systemProperties, System::getenv, commandRunner, null, ExecutableValidation.COMMAND);
+  }
+
+  MavenEnvironment(
+      Supplier<Log> log,
+      UnaryOperator<String> systemProperties,
+      UnaryOperator<String> environment,
+      CommandRunner commandRunner,
+      Path cacheFile,
+      ExecutableValidation validation) {
     this.log = log;
     this.systemProperties = requireNonNull(systemProperties);
+    this.environment = requireNonNull(environment);
     this.commandRunner = requireNonNull(commandRunner);
+    this.cache = cacheFile == null ? null : new MavenExecutableCache(log, cacheFile);
+    this.validation = requireNonNull(validation);
   }
 
   public Path getMavenExecutable(boolean debug) {
     Path mavenHome = Paths.get(systemProperties.apply(MAVEN_HOME_PROP));
     log.get().debug("maven.home=" + mavenHome);
-    Path mavenBinDirectory = mavenHome.resolve("bin");
+    return resolve(mavenCacheKeyBase(mavenHome, debug), mavenCandidates(mavenHome, debug))
+        .orElseThrow(() -> new MavenGitHookException("No valid maven executable found !"));
+  }
 
-    List<List<Executable>> executableCandidates =
-        Arrays.asList(
-            Arrays.asList(
-                new Executable(debug, mavenBinDirectory, Extension.NONE),
-                new Executable(debug, null, Extension.NONE)),
-            Arrays.asList(
-                new Executable(debug, mavenBinDirectory, Extension.CMD),
-                new Executable(debug, null, Extension.CMD)));
+  /**
+   * What the resolution of the maven executable depends on, without resolving it: maven.home, the
+   * PATH and the stamps of the candidate files.
+   */
+  public String getMavenExecutableInputs(boolean debug) {
+    Path mavenHome = Paths.get(systemProperties.apply(MAVEN_HOME_PROP));
+    return cacheKey(mavenCacheKeyBase(mavenHome, debug), mavenCandidates(mavenHome, debug));
+  }
+
+  /**
+   * Looks for the Maven Daemon client, in MVND_HOME first, then on the PATH. Its absence is cached
+   * like any resolution.
+   */
+  public Optional<Path> getMavenDaemonExecutable() {
+    String mvndHome = environment.apply(MVND_HOME_ENV);
+    log.get().debug(MVND_HOME_ENV + "=" + mvndHome);
+    return resolve(new Fingerprint().add("mvndHome", mvndHome), mavenDaemonCandidates(mvndHome));
+  }
+
+  /**
+   * What the resolution of the Maven Daemon client depends on, without resolving it: MVND_HOME, the
+   * PATH and the stamps of the candidate files.
+   */
+  public String getMavenDaemonExecutableInputs() {
+    String mvndHome = environment.apply(MVND_HOME_ENV);
+    return cacheKey(new Fingerprint().add("mvndHome", mvndHome), mavenDaemonCandidates(mvndHome));
+  }
+
+  private static Fingerprint mavenCacheKeyBase(Path mavenHome, boolean debug) {
+    return new Fingerprint().add("mavenHome", mavenHome.toAbsolutePath()).add("debug", debug);
+  }
 
+  private List<Executable> mavenCandidates(Path mavenHome, boolean debug) {
+    String name = debug ? "mvnDebug" : "mvn";
+    return candidates(name, mavenHome.resolve("bin"), MAVEN_LIB_DIRECTORY);
+  }
+
+  private List<Executable> mavenDaemonCandidates(String mvndHome) {
+    Path mvndBinDirectory = mvndHome == null ? null : Paths.get(mvndHome).resolve("bin");
+    return candidates("mvnd", mvndBinDirectory, MAVEN_DAEMON_LIB_DIRECTORY);
+  }
+
+  /**
+   * The candidates of an executable, located in the given directory then on the PATH. Extensions
+   * are ordered according to the current OS.
+   */
+  private List<Executable> candidates(String name, Path binDirectory, String libDirectory) {
+    List<Path> directories = new ArrayList<>();
+    if (binDirectory != null) {
+      directories.add(binDirectory);
+    }
+    directories.add(null);
+
+    List<Extension> extensions = new ArrayList<>(Arrays.asList(Extension.values()));
     if (OS.isFamilyWindows()) {
-      Collections.reverse(executableCandidates);
+      Collections.reverse(extensions);
     }
 
-    return executableCandidates.stream()
-        .flatMap(Collection::stream)
-        .filter(Executable::isValid)
-        .findFirst()
-        .map(Executable::path)
-        .orElseThrow(() -> new MavenGitHookException("No valid maven executable found !"));
+    List<Executable> candidates = new ArrayList<>();
+    for (Extension extension : extensions) {
+      for (Path directory : directories) {
+        candidates.add(new Executable(name, directory, extension, libDirectory));
+      }
+    }
+    return candidates;
   }
 
-  private class Executable {
+  private Optional<Path> resolve(Fingerprint cacheKeyBase, List<Executable> candidates) {
+    String cacheKey = cacheKey(cacheKeyBase, candidates);
+    if (cache != null) {
+      String cachedPath = cache.get(cacheKey);
+      if (cachedPath != null) {
+        log.get().debug("Using executable '" + cachedPath + "' cached in " + cache);
+        return cachedPath.equals(NO_EXECUTABLE)
+            ? Optional.empty()
+            : Optional.of(Paths.get(cachedPath));
+      }
+    }
 
-    private final Path path;
+    Optional<Path> executable = findFirstValid(candidates);
+    if (cache != null) {
+      cache.put(cacheKey, executable.map(Path::toString).orElse(NO_EXECUTABLE));
+    }
+    return executable;
+  }
+
+  /** Validates all candidates concurrently, then picks the first valid one in order. */
+  private Optional<Path> findFirstValid(List<Executable> candidates) {
+    ExecutorService executor =
+        Executors.newFixedThreadPool(
+            candidates.size(),
+            runnable -> {
+              Thread thread = new Thread(runnable, "maven-executable-probe");
+              thread.setDaemon(true);
+              return thread;
+            });
+    try {
+      List<Future<Boolean>> validities = new ArrayList<>();
+      for (Executable candidate : candidates) {
+        validities.add(executor.submit(candidate::isValid));
+      }
+      for (int i = 0; i < candidates.size(); i++) {
+        if (validities.get(i).get()) {
+          return Optional.of(candidates.get(i).path());
+        }
+      }
+      return Optional.empty();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new MavenGitHookException(e);
+    } catch (ExecutionException e) {
+      throw new MavenGitHookException(e.getCause());
+    } finally {
+      executor.shutdownNow();
+    }
+  }
+
+  private String cacheKey(Fingerprint fingerprint, List<Executable> candidates) {
+    fingerprint.add("validation", validation).add("path", environment.apply(PATH_ENV));
+    for (Executable candidate : candidates) {
+      Path path = candidate.path();
+      fingerprint.add(
+          path.toString(), fileStamp(path.getParent() == null ? findOnPath(path) : path));
+    }
+    return fingerprint.toHex();
+  }
 
-    private Executable(boolean debug, Path prefix, Extension extension) {
-      String name = "mvn";
-      if (debug) {
-        name += "Debug";
+  /** Modification time and size of the file */
+  private static String fileStamp(Path file) {
+    if (file == null) {
+      return "absent";
+    }
+    try {
+      BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+      return attributes.lastModifiedTime().toMillis() + ":" + attributes.size();
+    } catch (IOException e) {
+      return "absent";
+    }
+  }
+
+  /** Looks the executable up in the PATH directories, or returns null if it is not there */
+  private Path findOnPath(Path name) {
+    String pathVariable = environment.apply(PATH_ENV);
+    if (pathVariable == null) {
+      return null;
+    }
+    for (String directory : pathVariable.split(File.pathSeparator)) {
+      if (directory.isEmpty()) {
+        continue;
       }
-      if (extension != Extension.NONE) {
-        name += "." + extension.value;
+      Path candidate = Paths.get(directory).resolve(name);
+      if (Files.isRegularFile(candidate) && Files.isExecutable(candidate)) {
+        return candidate;
       }
+    }
+    return null;
+  }
+
+  private class Executable {
+
+    private final Path path;
+    private final String libDirectory;
+
+    /**
+     * @param libDirectory The directory holding the maven-core jar, relative to the installation
+     *     home
+     */
+    private Executable(String name, Path prefix, Extension extension, String libDirectory) {
+      String fileName = extension == Extension.NONE ? name : name + "." + extension.value;
       if (prefix != null) {
-        path = prefix.resolve(name);
+        path = prefix.resolve(fileName);
       } else {
-        path = Paths.get(name);
+        path = Paths.get(fileName);
       }
+      this.libDirectory = libDirectory;
     }
 
     Path path() {
@@ -89,15 +277,48 @@ public class MavenEnvironment {
     }
 
     boolean isValid() {
+      if (validation == ExecutableValidation.LAYOUT) {
+        return hasValidLayout();
+      }
       try {
         commandRunner.run(
-            null, Collections.singletonMap("MAVEN_DEBUG_OPTS", ""), path.toString(), "--version");
+            null,
+            Collections.singletonMap("MAVEN_DEBUG_OPTS", ""),
+            VERSION_COMMAND_TIMEOUT,
+            path.toString(),
+            "--version");
         return true;
       } catch (Exception e) {
         log.get().debug(e.getMessage());
       }
       return false;
     }
+
+    private boolean hasValidLayout() {
+      Path executable = path.getParent() == null ? findOnPath(path) : path;
+      if (executable == null || !Files.isRegularFile(executable)) {
+        log.get().debug(path + " is not a file");
+        return false;
+      }
+      try {
+        Path home = executable.toRealPath().getParent().getParent();
+        Path lib = home == null ? null : home.resolve(libDirectory);
+        if (lib == null || !Files.isDirectory(lib)) {
+          log.get().debug("No maven lib directory next to " + executable);
+          return false;
+        }
+        try (DirectoryStream<Path> mavenCore = Files.newDirectoryStream(lib, "maven-core-*.jar")) {
+          boolean valid = mavenCore.iterator().hasNext();
+          if (!valid) {
+            log.get().debug("No maven-core jar in " + lib);
+          }
+          return valid;
+        }
+      } catch (IOException e) {
+        log.get().debug(e.getMessage());
+        return false;
+      }
+    }
   }
 
   private enum Extension {
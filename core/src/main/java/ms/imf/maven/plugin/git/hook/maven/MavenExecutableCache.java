@@ -0,0 +1,72 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+import static java.util.Objects.requireNonNull;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+import java.util.function.Supplier;
+import org.apache.maven.plugin.logging.Log;
+
+/**
+ * Persists resolved maven executables across builds. Keys must capture everything the resolution
+ * depends on, since entries are never invalidated otherwise.
+ */
+class MavenExecutableCache {
+
+  private static final int MAX_ENTRIES = 32;
+
+  private final Supplier<Log> log;
+  private final Path file;
+
+  MavenExecutableCache(Supplier<Log> log, Path file) {
+    this.log = requireNonNull(log);
+    this.file = requireNonNull(file);
+  }
+
+  /** Returns the cached value, or null if there is none */
+  String get(String key) {
+    return load().getProperty(key);
+  }
+
+  void put(String key, String value) {
+    Properties properties = load();
+    if (properties.size() >= MAX_ENTRIES) {
+      properties.clear();
+    }
+    properties.setProperty(key, value);
+    try {
+      Files.createDirectories(file.getParent());
+      Path tempFile = Files.createTempFile(file.getParent(), file.getFileName().toString(), null);
+      try (OutputStream outputStream = Files.newOutputStream(tempFile)) {
+        properties.store(outputStream, "Generated by git-hook-maven-plugin. Do not edit.");
+      }
+      Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+    } catch (IOException e) {
+      log.get().debug("Failed to write " + file + ": " + e.getMessage());
+    }
+  }
+
+  private Properties load() {
+    Properties properties = new Properties();
+    try (InputStream inputStream = Files.newInputStream(file)) {
+      properties.load(inputStream);
+    } catch (NoSuchFileException e) {
+      log.get().debug(file + " does not exist");
+    } catch (IOException | IllegalArgumentException e) {
+      log.get().debug("Ignoring unreadable " + file + ": " + e.getMessage());
+      properties.clear();
+    }
+    return properties;
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+}
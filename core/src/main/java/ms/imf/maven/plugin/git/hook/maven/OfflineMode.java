@@ -0,0 +1,14 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+/** Whether the Maven commands of the hooks run offline. */
+public enum OfflineMode {
+  /**
+   * Offline when every plugin and dependency declared by the build is in the local repository at
+   * installation. A command failing on a missing artifact runs again online.
+   */
+  AUTO,
+  /** Always offline. A command failing on a missing artifact runs again online. */
+  ALWAYS,
+  /** Never offline. */
+  NEVER
+}
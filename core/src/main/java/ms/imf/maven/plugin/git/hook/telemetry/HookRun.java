@@ -0,0 +1,85 @@
+package ms.imf.maven.plugin.git.hook.telemetry;
+
+import static java.util.Objects.requireNonNull;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/** A run of a hook, or of one of its steps, as recorded by the hook runtime. */
+public final class HookRun {
+
+  private static final Pattern FIELD =
+      Pattern.compile("\"(\\w+)\"\\s*:\\s*(?:\"((?:[^\"\\\\]|\\\\.)*)\"|(-?\\d+))");
+
+  private final long time;
+  private final String hook;
+  private final String step;
+  private final long durationMillis;
+  private final int exitCode;
+
+  HookRun(long time, String hook, String step, long durationMillis, int exitCode) {
+    this.time = time;
+    this.hook = requireNonNull(hook);
+    this.step = step;
+    this.durationMillis = durationMillis;
+    this.exitCode = exitCode;
+  }
+
+  /**
+   * Parses a line written by the hook runtime, e.g.
+   * '{"time":1700000000000,"hook":"pre-commit","step":"lint","durationMillis":1200,"exitCode":0}'.
+   * Returns null when the line is not a run record, such as a line truncated by a crash.
+   */
+  public static HookRun parse(String line) {
+    Map<String, String> fields = new HashMap<>();
+    Matcher matcher = FIELD.matcher(line);
+    while (matcher.find()) {
+      String value =
+          matcher.group(2) == null
+              ? matcher.group(3)
+              : matcher.group(2).replaceAll("\\\\(.)", "$1");
+      fields.put(matcher.group(1), value);
+    }
+    String hook = fields.get("hook");
+    String time = fields.get("time");
+    String durationMillis = fields.get("durationMillis");
+    String exitCode = fields.get("exitCode");
+    if (hook == null || time == null || durationMillis == null || exitCode == null) {
+      return null;
+    }
+    try {
+      return new HookRun(
+          Long.parseLong(time),
+          hook,
+          fields.get("step"),
+          Long.parseLong(durationMillis),
+          Integer.parseInt(exitCode));
+    } catch (NumberFormatException e) {
+      return null;
+    }
+  }
+
+  /** The start of the run, in milliseconds since the epoch */
+  public long time() {
+    return time;
+  }
+
+  public String hook() {
+    return hook;
+  }
+
+  /** The step name, or null for the run of the whole hook */
+  public String step() {
+    return step;
+  }
+
+  public long durationMillis() {
+    return durationMillis;
+  }
+
+  public int exitCode() {
+    return exitCode;
+  }
+}
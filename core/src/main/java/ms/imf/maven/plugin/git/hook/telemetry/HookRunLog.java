@@ -0,0 +1,56 @@
+package ms.imf.maven.plugin.git.hook.telemetry;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * The hook runs recorded by the hook runtime in telemetry/hook-runs.jsonl under the plugin
+ * directory, along with its rotated files hook-runs.jsonl.1 to hook-runs.jsonl.3.
+ */
+public final class HookRunLog {
+
+  private static final String DIRECTORY = "telemetry";
+  private static final String FILE = "hook-runs.jsonl";
+  private static final int ROTATED_FILES = 3;
+
+  private final Path file;
+
+  /**
+   * @param pluginDirectory The directory holding the plugin state
+   */
+  public HookRunLog(Path pluginDirectory) {
+    this.file = pluginDirectory.resolve(DIRECTORY).resolve(FILE);
+  }
+
+  /** Reads every recorded run, oldest file first. Lines that are not run records are ignored. */
+  public List<HookRun> read() throws IOException {
+    List<HookRun> runs = new ArrayList<>();
+    for (int i = ROTATED_FILES; i >= 0; i--) {
+      Path logFile = i == 0 ? file : file.resolveSibling(FILE + "." + i);
+      try (BufferedReader reader = Files.newBufferedReader(logFile, UTF_8)) {
+        String line;
+        while ((line = reader.readLine()) != null) {
+          HookRun run = HookRun.parse(line);
+          if (run != null) {
+            runs.add(run);
+          }
+        }
+      } catch (NoSuchFileException e) {
+        // Not rotated yet
+      }
+    }
+    return runs;
+  }
+
+  @Override
+  public String toString() {
+    return file.toString();
+  }
+}
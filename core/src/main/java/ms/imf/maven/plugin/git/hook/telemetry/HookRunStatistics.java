@@ -0,0 +1,92 @@
+package ms.imf.maven.plugin.git.hook.telemetry;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** The duration distribution of the runs of a hook, or of one of its steps. */
+public final class HookRunStatistics {
+
+  private final String hook;
+  private final String step;
+  private final int count;
+  private final int failures;
+  private final long p50Millis;
+  private final long p95Millis;
+  private final long maxMillis;
+
+  private HookRunStatistics(String hook, String step, List<HookRun> runs) {
+    this.hook = hook;
+    this.step = step;
+    this.count = runs.size();
+    this.failures = (int) runs.stream().filter(run -> run.exitCode() != 0).count();
+    long[] durations = runs.stream().mapToLong(HookRun::durationMillis).toArray();
+    Arrays.sort(durations);
+    this.p50Millis = percentile(durations, 50);
+    this.p95Millis = percentile(durations, 95);
+    this.maxMillis = durations[durations.length - 1];
+  }
+
+  /**
+   * Groups the runs by hook then step. Hooks come sorted by name, each one followed by its steps
+   * sorted by name.
+   */
+  public static List<HookRunStatistics> of(Collection<HookRun> runs) {
+    Map<List<String>, List<HookRun>> runsByKey = new LinkedHashMap<>();
+    runs.stream()
+        .sorted(
+            Comparator.comparing(HookRun::hook)
+                .thenComparing(HookRun::step, Comparator.nullsFirst(Comparator.naturalOrder())))
+        .forEach(
+            run ->
+                runsByKey
+                    .computeIfAbsent(
+                        Arrays.asList(run.hook(), run.step()), key -> new ArrayList<>())
+                    .add(run));
+
+    List<HookRunStatistics> statistics = new ArrayList<>();
+    runsByKey.forEach(
+        (key, keyRuns) -> statistics.add(new HookRunStatistics(key.get(0), key.get(1), keyRuns)));
+    return statistics;
+  }
+
+  /** The nearest-rank percentile of sorted values */
+  private static long percentile(long[] sortedValues, int percent) {
+    int rank = (int) Math.ceil(percent / 100.0 * sortedValues.length);
+    return sortedValues[Math.max(rank, 1) - 1];
+  }
+
+  public String hook() {
+    return hook;
+  }
+
+  /** The step name, or null for the statistics of the whole hook */
+  public String step() {
+    return step;
+  }
+
+  public int count() {
+    return count;
+  }
+
+  /** The number of runs with a non-zero exit code */
+  public int failures() {
+    return failures;
+  }
+
+  public long p50Millis() {
+    return p50Millis;
+  }
+
+  public long p95Millis() {
+    return p95Millis;
+  }
+
+  public long maxMillis() {
+    return maxMillis;
+  }
+}
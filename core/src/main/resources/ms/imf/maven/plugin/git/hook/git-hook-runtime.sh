@@ -0,0 +1,1025 @@
+#!/bin/bash
+# Shared functions of the hooks installed by git-hook-maven-plugin.
+# Generated hooks source this file. Do not edit: it is rewritten on installation.
+
+ghmp_cleanup_files=()
+ghmp_step_pids=()
+ghmp_steps=()
+
+ghmp_cleanup() {
+  local status=$?
+  ghmp_kill_steps
+  if [ ${#ghmp_cleanup_files[@]} -gt 0 ]; then
+    rm -rf -- "${ghmp_cleanup_files[@]}"
+  fi
+  if [ -n "${ghmp_telemetry_started:-}" ]; then
+    ghmp_telemetry_record "" "$ghmp_telemetry_started" "$status" || true
+  fi
+}
+trap ghmp_cleanup EXIT
+
+# Prints the current time in milliseconds since the epoch. Bash 5 gives it without forking, GNU date
+# otherwise, and other dates only to the second.
+ghmp_now_millis() {
+  local now
+  if [ -n "${EPOCHREALTIME:-}" ]; then
+    now="${EPOCHREALTIME/[.,]/}"
+    now="${now:0:${#now}-3}"
+  else
+    now="$(date +%s%3N 2>/dev/null)"
+    case "$now" in
+      "" | *[!0-9]*) now="$(date +%s)000" ;;
+    esac
+  fi
+  printf '%s' "$now"
+}
+
+# Prints the directory holding the plugin state, shared by all the worktrees.
+ghmp_plugin_directory() {
+  local git_dir
+  git_dir="$(git rev-parse --git-common-dir 2>/dev/null)" || git_dir="$(git rev-parse --git-dir)"
+  printf '%s/git-hook-maven-plugin' "$git_dir"
+}
+
+# Records the duration and exit code of the hook, then of each of its steps, as JSON lines appended
+# to telemetry/hook-runs.jsonl in the plugin directory. The file is rotated once it exceeds the
+# maximum size, keeping the 3 previous ones.
+# Usage: ghmp_telemetry_start <hook name> <max file size in KiB>
+ghmp_telemetry_start() {
+  ghmp_telemetry_hook="$1"
+  ghmp_telemetry_max_size="$2"
+  ghmp_telemetry_file="$(ghmp_plugin_directory)/telemetry/hook-runs.jsonl"
+  case "$ghmp_telemetry_file" in
+    /*) ;;
+    *) ghmp_telemetry_file="$PWD/$ghmp_telemetry_file" ;;
+  esac
+  ghmp_telemetry_started="$(ghmp_now_millis)"
+}
+
+ghmp_json_string() {
+  local value="${1//\\/\\\\}"
+  value="${value//\"/\\\"}"
+  printf '"%s"' "$value"
+}
+
+# Appends a run record, for the hook itself when the step name is empty. Never fails the hook.
+# Usage: ghmp_telemetry_record <step name> <start millis> <exit code>
+ghmp_telemetry_record() {
+  [ -n "${ghmp_telemetry_file:-}" ] || return 0
+  local file="$ghmp_telemetry_file" now step="" size i
+  now="$(ghmp_now_millis)"
+  [ -z "$1" ] || step=",\"step\":$(ghmp_json_string "$1")"
+  mkdir -p "${file%/*}" 2>/dev/null || return 0
+  if [ -f "$file" ]; then
+    size=$(($(wc -c <"$file") / 1024))
+    if [ $size -ge "$ghmp_telemetry_max_size" ]; then
+      for i in 2 1; do
+        [ ! -f "$file.$i" ] || mv -f "$file.$i" "$file.$((i + 1))" 2>/dev/null
+      done
+      mv -f "$file" "$file.1" 2>/dev/null
+    fi
+  fi
+  printf '{"time":%s,"hook":%s%s,"durationMillis":%s,"exitCode":%s}\n' "$2" \
+    "$(ghmp_json_string "$ghmp_telemetry_hook")" "$step" $((now - $2)) "$3" \
+    >>"$file" 2>/dev/null || true
+}
+
+# Creates a temporary file removed when the hook exits.
+# Usage: ghmp_temp_file <variable name>
+ghmp_temp_file() {
+  local file
+  file="$(mktemp "${TMPDIR:-/tmp}/ghmp.XXXXXX")"
+  ghmp_cleanup_files+=("$file")
+  printf -v "$1" '%s' "$file"
+}
+
+# Matches a path against a glob where '*' also matches '/'. A leading '**/', or the first '/**/',
+# matches any directory depth, including none.
+# Usage: ghmp_glob_matches <path> <glob>
+ghmp_glob_matches() {
+  # shellcheck disable=SC2053
+  [[ $1 == $2 ]] && return 0
+  [[ $2 == '**/'* ]] && [[ $1 == ${2#\*\*/} ]] && return 0
+  [[ $2 == *'/**/'* ]] && [[ $1 == ${2/\/\*\*\//\/} ]] && return 0
+  return 1
+}
+
+# Tells whether a path is selected by include and exclude globs. No include glob selects every
+# path.
+# Usage: ghmp_path_selected <path> <include>... -- <exclude>...
+ghmp_path_selected() {
+  local path="$1" glob included=1 in_excludes=0
+  shift
+  for glob in "$@"; do
+    if [ "$glob" = "--" ]; then
+      in_excludes=1
+      continue
+    fi
+    if [ $in_excludes -eq 0 ]; then
+      included=0
+      break
+    fi
+  done
+  in_excludes=0
+  for glob in "$@"; do
+    if [ "$glob" = "--" ]; then
+      in_excludes=1
+    elif [ $in_excludes -eq 0 ]; then
+      ghmp_glob_matches "$path" "$glob" && included=1
+    elif ghmp_glob_matches "$path" "$glob"; then
+      return 1
+    fi
+  done
+  [ $included -eq 1 ]
+}
+
+# Computes the staged paths once, filtered by globs, and exposes them to the hook command:
+#   GHMP_STAGED_FILES_COUNT  the number of selected paths
+#   GHMP_STAGED_FILES_FILE   a NUL-delimited file of the paths
+#   GHMP_STAGED_FILES_LIST   a newline-delimited file of the paths, usable as an @argfile
+#   GHMP_STAGED_FILES        the comma-separated paths, only set when shorter than the inline limit
+# Paths are relative to the work tree root. Exits the hook successfully when no path is selected.
+# Runs covering deferred commits select the paths staged since GHMP_DEFERRED_BASE.
+# Usage: ghmp_collect_staged_files <inline limit> <include>... -- <exclude>...
+ghmp_collect_staged_files() {
+  local inline_limit="$1" path count=0 inline="" inline_length=0
+  shift
+  ghmp_temp_file GHMP_STAGED_FILES_FILE
+  ghmp_temp_file GHMP_STAGED_FILES_LIST
+  while IFS= read -r -d '' path; do
+    ghmp_path_selected "$path" "$@" || continue
+    printf '%s\0' "$path" >>"$GHMP_STAGED_FILES_FILE"
+    printf '%s\n' "$path" >>"$GHMP_STAGED_FILES_LIST"
+    count=$((count + 1))
+    if [ $inline_length -le "$inline_limit" ]; then
+      inline="${inline:+$inline,}$path"
+      inline_length=${#inline}
+    fi
+  done < <(git diff --cached --name-only -z --diff-filter=ACMR ${GHMP_DEFERRED_BASE:+"$GHMP_DEFERRED_BASE"})
+
+  if [ $count -eq 0 ]; then
+    echo "No staged file selected, skipping the hook"
+    exit 0
+  fi
+  export GHMP_STAGED_FILES_COUNT=$count GHMP_STAGED_FILES_FILE GHMP_STAGED_FILES_LIST
+  if [ $inline_length -le "$inline_limit" ]; then
+    export GHMP_STAGED_FILES="$inline"
+  else
+    unset GHMP_STAGED_FILES
+  fi
+}
+
+# Prints the staged files as a property value: the comma-separated paths when they fit the inline
+# limit, otherwise '@' followed by the newline-delimited list file.
+ghmp_staged_files_argument() {
+  if [ -n "${GHMP_STAGED_FILES+x}" ]; then
+    printf '%s' "$GHMP_STAGED_FILES"
+  else
+    printf '@%s' "$GHMP_STAGED_FILES_LIST"
+  fi
+}
+
+# Prints the paths changed by a pushed ref update, NUL-delimited. Fails when they cannot be known
+# locally, e.g. when the remote commit was never fetched.
+# Usage: ghmp_pushed_paths <local sha> <remote sha>
+ghmp_pushed_paths() {
+  if [[ $2 =~ ^0+$ ]]; then
+    # New remote ref: everything not reachable from a remote-tracking ref is being pushed
+    git log --no-renames --format= --name-only -z "$1" --not --remotes
+  elif git cat-file -e "$2^{commit}" 2>/dev/null; then
+    git diff --no-renames --name-only -z "$2" "$1"
+  else
+    return 1
+  fi
+}
+
+# Reads the pushed refs from stdin into ghmp_push_refs, once, so that every consumer sees them.
+ghmp_read_push_refs() {
+  if [ -z "${ghmp_push_refs_read:-}" ]; then
+    ghmp_push_refs="$(cat)"
+    ghmp_push_refs_read=1
+  fi
+}
+
+# Maps the paths changed by the pushed refs, read from stdin, to the reactor modules owning them.
+# Each path belongs to the module with the deepest directory containing it. Exposes:
+#   GHMP_AFFECTED_MODULES    the comma-separated selectors of the affected modules, empty when the
+#                            whole reactor must be built
+#   GHMP_MAVEN_MODULE_ARGS   the matching maven arguments, '-pl <modules> -amd' or nothing
+# Paths owned by the root module, or changes that cannot be computed, require the whole reactor.
+# Exits the hook successfully when no module is affected.
+# Usage: ghmp_collect_pushed_modules <root module directory> <module directory> <selector>...
+ghmp_collect_pushed_modules() {
+  local root="$1" local_ref local_sha remote_ref remote_sha paths path
+  local module_dirs=() module_selectors=() affected=() full=0 i best best_length selector known
+  shift
+  while [ $# -ge 2 ]; do
+    module_dirs+=("$1")
+    module_selectors+=("$2")
+    shift 2
+  done
+
+  ghmp_temp_file paths
+  ghmp_read_push_refs
+  # shellcheck disable=SC2034
+  while read -r local_ref local_sha remote_ref remote_sha; do
+    [ -n "$local_sha" ] || continue
+    # Deleted remote refs build nothing
+    [[ $local_sha =~ ^0+$ ]] && continue
+    if ! ghmp_pushed_paths "$local_sha" "$remote_sha" >>"$paths"; then
+      echo "Cannot compute the changes pushed to $remote_ref, building the whole reactor"
+      full=1
+      break
+    fi
+  done <<<"$ghmp_push_refs"
+
+  if [ $full -eq 0 ]; then
+    while IFS= read -r -d '' path; do
+      [ -n "$path" ] || continue
+      best=-1
+      best_length=-1
+      for i in "${!module_dirs[@]}"; do
+        if [[ $path == "${module_dirs[$i]}"/* ]] && [ ${#module_dirs[$i]} -gt $best_length ]; then
+          best=$i
+          best_length=${#module_dirs[$i]}
+        fi
+      done
+      if [ $best -lt 0 ]; then
+        # Outside of the reactor, or owned by the root module itself
+        if [ -z "$root" ] || [[ $path == "$root"/* ]]; then
+          full=1
+          break
+        fi
+        continue
+      fi
+      selector="${module_selectors[$best]}"
+      known=0
+      for i in "${affected[@]}"; do
+        [ "$i" = "$selector" ] && known=1 && break
+      done
+      [ $known -eq 1 ] || affected+=("$selector")
+    done <"$paths"
+  fi
+
+  GHMP_MAVEN_MODULE_ARGS=()
+  if [ $full -eq 1 ]; then
+    export GHMP_AFFECTED_MODULES=""
+    return 0
+  fi
+  if [ ${#affected[@]} -eq 0 ]; then
+    echo "No pushed change affects the reactor, skipping the hook"
+    exit 0
+  fi
+  GHMP_AFFECTED_MODULES="$(IFS=,; printf '%s' "${affected[*]}")"
+  export GHMP_AFFECTED_MODULES
+  GHMP_MAVEN_MODULE_ARGS=(-pl "$GHMP_AFFECTED_MODULES" -amd)
+  echo "Building the modules affected by the push: $GHMP_AFFECTED_MODULES"
+}
+
+# Collects the paths the hook changes into ghmp_changed_paths: the staged paths for pre-commit, the
+# pushed paths for pre-push, and the paths of the commit for the other hooks. Runs covering deferred
+# commits collect the paths changed since GHMP_DEFERRED_BASE instead. Leaves
+# ghmp_changed_paths_known empty when they cannot be known locally.
+# Usage: ghmp_collect_changed_paths <hook name>
+ghmp_collect_changed_paths() {
+  local paths path local_ref local_sha remote_ref remote_sha
+  ghmp_changed_paths=()
+  ghmp_changed_paths_known=1
+  # Not a cleanup file: the command may run in a subshell which does not clean up
+  paths="$(mktemp "${TMPDIR:-/tmp}/ghmp.XXXXXX")"
+  case "$1" in
+    pre-commit)
+      git diff --cached --no-renames --name-only -z ${GHMP_DEFERRED_BASE:+"$GHMP_DEFERRED_BASE"} \
+        >"$paths" || ghmp_changed_paths_known=""
+      ;;
+    pre-push)
+      ghmp_read_push_refs
+      # shellcheck disable=SC2034
+      while read -r local_ref local_sha remote_ref remote_sha; do
+        [ -n "$local_sha" ] || continue
+        [[ $local_sha =~ ^0+$ ]] && continue
+        if ! ghmp_pushed_paths "$local_sha" "$remote_sha" >>"$paths"; then
+          ghmp_changed_paths_known=""
+          break
+        fi
+      done <<<"$ghmp_push_refs"
+      ;;
+    *)
+      if [ -n "${GHMP_DEFERRED_BASE:-}" ]; then
+        git diff --no-renames --name-only -z "$GHMP_DEFERRED_BASE" "${GHMP_COMMIT:-HEAD}" \
+          >"$paths" || ghmp_changed_paths_known=""
+      else
+        git diff-tree --no-commit-id --no-renames --name-only -z -r --root "${GHMP_COMMIT:-HEAD}" \
+          >"$paths" || ghmp_changed_paths_known=""
+      fi
+      ;;
+  esac
+  while IFS= read -r -d '' path; do
+    [ -z "$path" ] || ghmp_changed_paths+=("$path")
+  done <"$paths"
+  rm -f "$paths"
+}
+
+# Tells whether a path collected by ghmp_collect_changed_paths is selected by include and exclude
+# globs. Any path is considered selected when they are unknown.
+# Usage: ghmp_changed_path_selected <include>... -- <exclude>...
+ghmp_changed_path_selected() {
+  local path
+  [ -n "${ghmp_changed_paths_known:-}" ] || return 0
+  for path in ${ghmp_changed_paths[@]+"${ghmp_changed_paths[@]}"}; do
+    ghmp_path_selected "$path" "$@" && return 0
+  done
+  return 1
+}
+
+# Prints why no changed path is selected by include and exclude globs.
+# Usage: ghmp_unselected_reason <include>... -- <exclude>...
+ghmp_unselected_reason() {
+  local glob includes="" excludes="" in_excludes=0
+  for glob in "$@"; do
+    if [ "$glob" = "--" ]; then
+      in_excludes=1
+    elif [ $in_excludes -eq 0 ]; then
+      includes="${includes:+$includes, }$glob"
+    else
+      excludes="${excludes:+$excludes, }$glob"
+    fi
+  done
+  printf 'no changed path'
+  [ -z "$includes" ] || printf ' matches %s' "$includes"
+  [ -z "$excludes" ] || printf ' outside of %s' "$excludes"
+}
+
+# Exits the hook successfully unless a changed path is selected by the hook globs.
+# Usage: ghmp_require_changed_paths <hook name> <include>... -- <exclude>...
+ghmp_require_changed_paths() {
+  local hook="$1"
+  shift
+  ghmp_changed_path_selected "$@" && return 0
+  echo "Skipping the $hook hook, $(ghmp_unselected_reason "$@")"
+  ghmp_partial_run "the $hook hook was skipped"
+  exit 0
+}
+
+# Adds a step to ghmp_steps, unless no changed path is selected by its globs.
+# Usage: ghmp_add_step <name> <timeout> <budget> <function> <include>... -- <exclude>...
+ghmp_add_step() {
+  local name="$1" timeout="$2" budget="$3" function="$4"
+  shift 4
+  if ghmp_changed_path_selected "$@"; then
+    ghmp_steps+=("$name" "$timeout" "$budget" "$function")
+  else
+    echo "==> $name skipped, $(ghmp_unselected_reason "$@")"
+    ghmp_partial_run "the $name step was skipped"
+  fi
+}
+
+# Updates a persistent snapshot of the staged content, then exposes its directory through
+# GHMP_STAGED_SNAPSHOT. The snapshot has an index of its own, next to it, recording the tree it
+# holds: only the files whose content differs between that tree and the staged one are written, so
+# that unchanged files keep their modification time. Files the builds add to the snapshot, like
+# their target directories, are kept.
+# Usage: ghmp_stage_snapshot <snapshot directory>
+ghmp_stage_snapshot() {
+  local snapshot="$1" tree previous=""
+  tree="$(git write-tree)"
+  mkdir -p "$snapshot"
+  [ -f "$snapshot.index" ] && previous="$(cat "$snapshot.tree" 2>/dev/null || true)"
+  if [ "$previous" != "$tree" ]; then
+    # A two-way merge from the previous tree only touches the changed paths. It refuses to
+    # overwrite snapshot files modified since, which a reset then overwrites.
+    if [ -z "$previous" ] \
+      || ! GIT_INDEX_FILE="$snapshot.index" git --work-tree="$snapshot" \
+        read-tree -m -u "$previous" "$tree" 2>/dev/null; then
+      GIT_INDEX_FILE="$snapshot.index" git --work-tree="$snapshot" read-tree --reset -u "$tree"
+    fi
+    echo "$tree" >"$snapshot.tree.$$" && mv -f "$snapshot.tree.$$" "$snapshot.tree"
+  fi
+  export GHMP_STAGED_SNAPSHOT="$snapshot"
+}
+
+# Selects the maven client of the hook into GHMP_MAVEN_COMMAND: the Maven Daemon client with its
+# arguments when it is still available, otherwise mvn.
+# Usage: ghmp_maven_command <mvnd> <mvnd argument>... -- <mvn>
+ghmp_maven_command() {
+  local mvnd="$1" available=0
+  shift
+  command -v "$mvnd" >/dev/null 2>&1 && available=1
+  GHMP_MAVEN_COMMAND=()
+  [ $available -eq 0 ] || GHMP_MAVEN_COMMAND+=("$mvnd")
+  while [ $# -gt 0 ] && [ "$1" != "--" ]; do
+    [ $available -eq 0 ] || GHMP_MAVEN_COMMAND+=("$1")
+    shift
+  done
+  if [ $available -eq 0 ]; then
+    echo "$mvnd is not available, falling back to mvn" >&2
+    GHMP_MAVEN_COMMAND=("$2")
+  fi
+}
+
+# Runs a Maven command offline. When an artifact the command needs is missing from the local
+# repository, runs it again online.
+# Usage: ghmp_run_offline <maven executable> <argument>...
+ghmp_run_offline() {
+  local output status
+  ghmp_temp_file output
+  set +e
+  "$1" -o "${@:2}" 2>&1 | tee "$output"
+  status=${PIPESTATUS[0]}
+  set -e
+  if [ "$status" -ne 0 ] \
+    && grep -q -e "in offline mode" -e "No plugin found for prefix" "$output"; then
+    echo "Some artifacts are missing from the local repository, running again online" >&2
+    "$@"
+    return
+  fi
+  return "$status"
+}
+
+# Prints the key of the content the hook verifies, combined with the hook fingerprint and the inputs
+# selected for the command. The content is the index tree for pre-commit, which verifies what gets
+# committed, and the tree of HEAD for the other hooks, which verify the commit made or pushed. Fails
+# when the working tree differs from that tree, since the command would then verify content that no
+# tree describes.
+# Usage: ghmp_result_key <hook name> <hook fingerprint>
+ghmp_result_key() {
+  local tree
+  if [ "$1" = "pre-commit" ]; then
+    git diff --quiet 2>/dev/null || return 1
+    [ -z "$(git ls-files --others --exclude-standard --directory --no-empty-directory | head -n 1)" ] \
+      || return 1
+    tree="$(git write-tree 2>/dev/null)" || return 1
+  else
+    tree="$(ghmp_verified_tree)" || return 1
+  fi
+  {
+    printf '%s\n' "$1" "$2" "$tree" "${JAVA_HOME:-}" "${GHMP_AFFECTED_MODULES:-}"
+    if [ -n "${GHMP_STAGED_FILES_FILE:-}" ]; then
+      cat "$GHMP_STAGED_FILES_FILE"
+    fi
+  } | git hash-object --stdin
+}
+
+ghmp_result_store() {
+  printf '%s/results' "$(ghmp_plugin_directory)"
+}
+
+# Removes the results older than the maximum age, then the least recently used ones until the store
+# fits the maximum size. The oldest file always goes, so that the temporary file left by an
+# interrupted run cannot stall the eviction.
+# Usage: ghmp_evict_results <store> <max age in days> <max size in KiB>
+ghmp_evict_results() {
+  local store="$1" oldest
+  find "$store" -type f -mtime +"$2" -exec rm -f {} + 2>/dev/null || true
+  while [ "$(du -sk "$store" | cut -f1)" -gt "$3" ]; do
+    # shellcheck disable=SC2012
+    oldest="$(ls -t "$store" | tail -n 1)"
+    [ -n "$oldest" ] || break
+    rm -f "$store/$oldest" "$store/${oldest%.*}.status" "$store/${oldest%.*}.log"
+  done
+}
+
+# Runs the hook command unless the same content already went through it. A cached success skips
+# the command, a cached failure replays its output and exit code. Results are only recorded and
+# reused when the working tree matches the index. Set GHMP_NO_RESULT_CACHE to bypass the cache.
+# Usage: ghmp_run_cached <hook name> <hook fingerprint> <max age in days> <max size in KiB> <command>
+ghmp_run_cached() {
+  local hook="$1" fingerprint="$2" max_age="$3" max_size="$4" command="$5"
+  local key="" store status output
+  if [ -z "${GHMP_NO_RESULT_CACHE:-}" ]; then
+    key="$(ghmp_result_key "$hook" "$fingerprint")" || key=""
+  fi
+  if [ -z "$key" ]; then
+    (set -e; "$command")
+    return
+  fi
+
+  store="$(ghmp_result_store)"
+  if [ -f "$store/$key.status" ] && [ -f "$store/$key.log" ]; then
+    status="$(cat "$store/$key.status")"
+    touch "$store/$key.status" "$store/$key.log"
+    if [ "$status" = "0" ]; then
+      echo "The $hook hook already passed on this content, skipping it"
+      exit 0
+    fi
+    cat "$store/$key.log"
+    echo "The $hook hook already failed on this content. Set GHMP_NO_RESULT_CACHE=1 to run it again" >&2
+    exit "$status"
+  fi
+
+  ghmp_temp_file output
+  set +e
+  (set -e; "$command") 2>&1 | tee "$output"
+  status=${PIPESTATUS[0]}
+  set -e
+  # Interruptions and timeouts say nothing about the content, nor does content modified during the
+  # run
+  if [ "$status" -le 128 ] && [ "$status" -ne 124 ] && [ "$(ghmp_result_key "$hook" "$fingerprint" || true)" = "$key" ]; then
+    mkdir -p "$store"
+    cp "$output" "$store/$key.log.$$" && mv -f "$store/$key.log.$$" "$store/$key.log"
+    echo "$status" >"$store/$key.status.$$" && mv -f "$store/$key.status.$$" "$store/$key.status"
+    ghmp_evict_results "$store" "$max_age" "$max_size"
+  fi
+  exit "$status"
+}
+
+# Kills a step started by ghmp_run_steps, along with every process of its group.
+ghmp_kill_step() {
+  kill -TERM -- "-$1" 2>/dev/null || kill -TERM "$1" 2>/dev/null || true
+}
+
+ghmp_kill_steps() {
+  local pid
+  for pid in "${ghmp_step_pids[@]}"; do
+    [ -z "$pid" ] || ghmp_kill_step "$pid"
+  done
+}
+
+# Kills a timed out step, then its whole group for good if it is still there after 5 seconds.
+ghmp_kill_timed_out_step() {
+  local i
+  ghmp_kill_step "$1"
+  for ((i = 0; i < 50; i++)); do
+    kill -0 -- "-$1" 2>/dev/null || return 0
+    sleep 0.1
+  done
+  kill -KILL -- "-$1" 2>/dev/null || true
+}
+
+# Enforces the limits of a running step started at the given time: kills it once it exceeds the
+# timeout, and warns once when it exceeds the budget. A limit of 0 disables it. Fails once the step
+# was killed.
+# Usage: ghmp_enforce_limits <description> <pid> <start millis> <timeout> <budget> <warned variable>
+ghmp_enforce_limits() {
+  local elapsed
+  elapsed=$(($(ghmp_now_millis) - $3))
+  if [ "$4" -gt 0 ] && [ $elapsed -ge $(($4 * 1000)) ]; then
+    ghmp_kill_timed_out_step "$2"
+    return 1
+  fi
+  if [ "$5" -gt 0 ] && [ $elapsed -ge $(($5 * 1000)) ] && [ -z "${!6:-}" ]; then
+    echo "$1 is over its ${5}s time budget, still running" >&2
+    printf -v "$6" '%s' 1
+  fi
+  return 0
+}
+
+# Runs a command in its own process group, so that exceeding the timeout kills every process it
+# started, steps included. The command output is not buffered. Fails with exit code 124 when the
+# timeout is exceeded. A limit of 0 disables it.
+# Usage: ghmp_run_limited <hook name> <timeout> <budget> <function>
+ghmp_run_limited() {
+  local name="$1" timeout="$2" budget="$3" pid start status=0 warned=""
+  trap 'exit 130' INT
+  trap 'exit 143' TERM
+  start="$(ghmp_now_millis)"
+  set -m
+  # Steps run in process groups of their own, which the command kills when it is killed
+  (trap ghmp_kill_steps EXIT; set -e; "$4") &
+  pid=$!
+  set +m
+  ghmp_step_pids=("$pid")
+  while kill -0 "$pid" 2>/dev/null; do
+    if ! ghmp_enforce_limits "The $name hook" "$pid" "$start" "$timeout" "$budget" warned; then
+      wait "$pid" 2>/dev/null || true
+      ghmp_step_pids=()
+      trap - INT TERM
+      echo "The $name hook timed out after ${timeout}s and was killed" >&2
+      return 124
+    fi
+    sleep 0.1
+  done
+  wait "$pid" || status=$?
+  ghmp_step_pids=()
+  trap - INT TERM
+  return $status
+}
+
+# Prints the output of a finished step under a header, so that concurrent steps never interleave.
+# Usage: ghmp_print_step <name> <status> <milliseconds> <output file>
+ghmp_print_step() {
+  local outcome="passed"
+  [ "$2" -eq 0 ] || outcome="failed with exit code $2"
+  echo "==> $1 $outcome in $(($3 / 1000)).$(($3 % 1000 / 100))s"
+  cat "$4"
+}
+
+# Runs the hook steps, at most <parallelism> at a time, in the given order. Each step runs in its own
+# process group with its output buffered, then printed when it finishes. The first failing step
+# kills the running ones, prevents the pending ones from starting, and gives the hook its exit code.
+# A step exceeding its timeout is killed and fails with exit code 124. A limit of 0 disables it.
+# Usage: ghmp_run_steps <parallelism> <name> <timeout> <budget> <function>...
+ghmp_run_steps() {
+  local parallelism="$1" names=() timeouts=() budgets=() functions=() outputs=() starts=()
+  local warned=() timed_out=() i next=0 running=0 status=0 failed="" pid
+  shift
+  while [ $# -ge 4 ]; do
+    names+=("$1")
+    timeouts+=("$2")
+    budgets+=("$3")
+    functions+=("$4")
+    shift 4
+  done
+
+  # Steps don't belong to the terminal process group anymore: forward interruptions through the
+  # exit trap, which kills them
+  trap 'exit 130' INT
+  trap 'exit 143' TERM
+  ghmp_step_pids=()
+  while [ $next -lt ${#names[@]} ] || [ $running -gt 0 ]; do
+    while [ -z "$failed" ] && [ $next -lt ${#names[@]} ] && [ $running -lt "$parallelism" ]; do
+      ghmp_temp_file "outputs[$next]"
+      # Job control gives the step its own process group. It is only enabled while forking, so
+      # that the shell does not report the jobs it kills.
+      set -m
+      (set -e; "${functions[$next]}") </dev/null >"${outputs[$next]}" 2>&1 &
+      ghmp_step_pids[$next]=$!
+      set +m
+      starts[$next]="$(ghmp_now_millis)"
+      running=$((running + 1))
+      next=$((next + 1))
+    done
+    [ -n "$failed" ] && [ $running -eq 0 ] && break
+
+    for i in "${!ghmp_step_pids[@]}"; do
+      pid="${ghmp_step_pids[$i]}"
+      [ -n "$pid" ] || continue
+      if kill -0 "$pid" 2>/dev/null; then
+        [ -n "$failed" ] && continue
+        ghmp_enforce_limits "==> ${names[$i]}" "$pid" "${starts[$i]}" "${timeouts[$i]}" \
+          "${budgets[$i]}" "warned[$i]" 2>&1 && continue
+        timed_out[$i]=1
+      fi
+      status=0
+      wait "$pid" 2>/dev/null || status=$?
+      [ -z "${timed_out[$i]:-}" ] || status=124
+      ghmp_step_pids[$i]=""
+      running=$((running - 1))
+      if [ -n "$failed" ]; then
+        echo "==> ${names[$i]} cancelled"
+        continue
+      fi
+      ghmp_telemetry_record "${names[$i]}" "${starts[$i]}" $status
+      if [ -n "${timed_out[$i]:-}" ]; then
+        echo "==> ${names[$i]} timed out after ${timeouts[$i]}s and was killed"
+        cat "${outputs[$i]}"
+      else
+        ghmp_print_step "${names[$i]}" $status $(($(ghmp_now_millis) - starts[i])) "${outputs[$i]}"
+      fi
+      if [ $status -ne 0 ]; then
+        failed=$status
+        ghmp_kill_steps
+      fi
+    done
+    [ $running -eq 0 ] || sleep 0.1
+  done
+
+  trap - INT TERM
+
+  for ((i = next; i < ${#names[@]}; i++)); do
+    echo "==> ${names[$i]} skipped"
+  done
+  [ -z "$failed" ] || return "$failed"
+}
+
+# Runs the hook command with its output appended to logs/<hook name>.log in the plugin directory,
+# which is rotated once it exceeds the maximum size, keeping the 3 previous ones. Prints a single
+# line with the outcome and the duration, followed by the last lines of the run output and the log
+# path when the command fails.
+# Usage: ghmp_run_quiet <hook name> <max log size in KiB> <tail lines> <function>
+ghmp_run_quiet() {
+  local hook="$1" max_size="$2" lines="$3" directory log offset=0 start elapsed status=0 i
+  directory="$(ghmp_plugin_directory)/logs"
+  case "$directory" in
+    /*) ;;
+    *) directory="$PWD/$directory" ;;
+  esac
+  mkdir -p "$directory"
+  log="$directory/$hook.log"
+  if [ -f "$log" ] && [ $(($(wc -c <"$log") / 1024)) -ge "$max_size" ]; then
+    for i in 2 1; do
+      [ ! -f "$log.$i" ] || mv -f "$log.$i" "$log.$((i + 1))"
+    done
+    mv -f "$log" "$log.1"
+  fi
+  [ ! -f "$log" ] || offset=$(($(wc -c <"$log")))
+
+  printf '==> %s running...' "$hook"
+  start="$(ghmp_now_millis)"
+  {
+    echo "==> $hook started at $(date)"
+    # On the left of ||, the subshell would ignore set -e
+    set +e
+    (set -e; "$4")
+    status=$?
+    set -e
+    echo "==> $hook finished with exit code $status"
+  } >>"$log" 2>&1
+  elapsed=$(($(ghmp_now_millis) - start))
+  if [ $status -eq 0 ]; then
+    echo " passed in $((elapsed / 1000)).$((elapsed % 1000 / 100))s"
+    return 0
+  fi
+  echo " failed with exit code $status in $((elapsed / 1000)).$((elapsed % 1000 / 100))s"
+  if [ "$lines" -gt 0 ]; then
+    tail -c +$((offset + 1)) "$log" | tail -n "$lines"
+  fi
+  echo "The full output is in $log"
+  return $status
+}
+
+# Queues a run of the hook command for the current HEAD, then returns at once. A single detached
+# worker per repository runs the queued command. Runs queued while the worker is busy coalesce into
+# one run for the latest HEAD. The worker appends to background/<hook name>.log in the plugin
+# directory, which is rotated beyond 1 MiB. A niceness greater than 0 lowers the worker priority.
+# Usage: ghmp_run_background <hook name> <niceness> <function>
+ghmp_run_background() {
+  local hook="$1" directory
+  directory="$(ghmp_plugin_directory)/background"
+  case "$directory" in
+    /*) ;;
+    *) directory="$PWD/$directory" ;;
+  esac
+  mkdir -p "$directory"
+  git rev-parse -q --verify HEAD >"$directory/$hook.pending.$$" || true
+  mv -f "$directory/$hook.pending.$$" "$directory/$hook.pending"
+  echo "The $hook hook runs in the background, see $directory/$hook.log"
+
+  # The worker records its own runs
+  ghmp_telemetry_started=""
+  # Job control detaches the worker from the terminal process group, so that interrupting the
+  # terminal does not interrupt it
+  set -m
+  (ghmp_background_worker "$directory" "$@") </dev/null >>"$directory/$hook.log" 2>&1 &
+  set +m
+}
+
+# Takes the worker lock, a directory holding the worker pid. The lock of a dead worker is taken
+# over.
+ghmp_acquire_worker_lock() {
+  local pid
+  if ! mkdir "$1" 2>/dev/null; then
+    pid="$(cat "$1/pid" 2>/dev/null || true)"
+    if [ -z "$pid" ] || kill -0 "$pid" 2>/dev/null; then
+      return 1
+    fi
+    rm -rf "$1"
+    mkdir "$1" 2>/dev/null || return 1
+  fi
+  echo "${BASHPID:-$$}" >"$1/pid"
+}
+
+# Usage: ghmp_background_worker <directory> <hook name> <niceness> <function>
+ghmp_background_worker() {
+  local directory="$1" hook="$2" lock="$1/$2.lock" log="$1/$2.log" commit start status
+  trap '' HUP
+  # The running worker will pick up the queued run
+  ghmp_acquire_worker_lock "$lock" || return 0
+  if [ "$3" -gt 0 ]; then
+    renice -n "$3" -p "${BASHPID:-$$}" >/dev/null 2>&1 || true
+  fi
+  # The temporary files of the hook may be gone
+  ghmp_cleanup_files=()
+  while true; do
+    while mv -f "$directory/$hook.pending" "$directory/$hook.running" 2>/dev/null; do
+      commit="$(cat "$directory/$hook.running")"
+      if [ -f "$log" ] && [ "$(wc -c <"$log")" -ge 1048576 ]; then
+        mv -f "$log" "$log.1"
+      fi
+      start="$(ghmp_now_millis)"
+      status=0
+      {
+        echo "==> $hook for ${commit:-no commit} started at $(date)"
+        # On the left of ||, the subshell would ignore set -e
+        set +e
+        (trap ghmp_cleanup EXIT; export GHMP_COMMIT="$commit"; set -e; "$4")
+        status=$?
+        set -e
+        echo "==> $hook for ${commit:-no commit} finished with exit code $status"
+      } >>"$log" 2>&1
+      ghmp_telemetry_record "" "$start" $status || true
+    done
+    rm -f "$directory/$hook.running"
+    rm -rf "$lock"
+    # A run queued while releasing the lock would be left pending
+    [ -f "$directory/$hook.pending" ] || break
+    ghmp_acquire_worker_lock "$lock" || break
+  done
+}
+
+# Reinstalls the hooks, by running the initialize phase, when a branch switch or a merge changed a
+# pom or a .mvn file. Never fails, so that the checkout or merge succeeds anyway.
+# Usage: ghmp_reinstall_hooks <post-checkout|post-merge> <maven executable> <pom> <hook argument>...
+ghmp_reinstall_hooks() {
+  local hook="$1" maven="$2" pom="$3" from=ORIG_HEAD to=HEAD changed
+  shift 3
+  if [ "$hook" = "post-checkout" ]; then
+    # File checkouts keep the branch
+    [ "${3:-}" = "1" ] || return 0
+    from="$1"
+    to="$2"
+  fi
+  [ "$from" != "$to" ] || return 0
+  changed="$(git diff --name-only "$from" "$to" -- \
+    ':(glob)**/pom.xml' ':(glob)**/.mvn/**' 2>/dev/null)" || changed="unknown"
+  [ -n "$changed" ] || return 0
+
+  echo "Build files changed, reinstalling the git hooks"
+  if ! "$maven" -f "$pom" -q initialize; then
+    echo "Failed to reinstall the git hooks, run 'mvn initialize' to reinstall them" >&2
+  fi
+  return 0
+}
+
+# Prints the bulk operation in progress in the worktree: rebase, am, cherry-pick, revert or merge, or
+# the marker environment variable when it is set. Prints nothing otherwise.
+# Usage: ghmp_bulk_operation <marker variable>
+ghmp_bulk_operation() {
+  local git_dir
+  if [ -n "$1" ] && [ -n "${!1:-}" ]; then
+    printf '%s' "$1"
+    return 0
+  fi
+  git_dir="$(git rev-parse --git-dir)" || return 0
+  if [ -d "$git_dir/rebase-merge" ]; then
+    printf 'rebase'
+  elif [ -f "$git_dir/rebase-apply/applying" ]; then
+    printf 'am'
+  elif [ -d "$git_dir/rebase-apply" ]; then
+    printf 'rebase'
+  elif [ -f "$git_dir/REVERT_HEAD" ]; then
+    printf 'revert'
+  elif [ -f "$git_dir/CHERRY_PICK_HEAD" ] || [ -d "$git_dir/sequencer" ]; then
+    printf 'cherry-pick'
+  elif [ -f "$git_dir/MERGE_HEAD" ]; then
+    printf 'merge'
+  fi
+  return 0
+}
+
+# The file recording the run of a hook deferred during a bulk operation: the commit the deferred
+# changes start from, then the operation.
+ghmp_deferred_file() {
+  printf '%s/git-hook-maven-plugin/deferred/%s' "$(git rev-parse --git-dir)" "$1"
+}
+
+# Applies the policy of the hook when a bulk operation is in progress. RUN runs the hook. SKIP exits
+# the hook successfully. DEFER does too, after recording the run, which then covers every change of
+# the operation: the post-rewrite hook runs it at the end of a rebase, otherwise the next regular run
+# of the hook does.
+# Usage: ghmp_bulk_operation_policy <hook name> <RUN|SKIP|DEFER> <marker variable>
+ghmp_bulk_operation_policy() {
+  local hook="$1" policy="$2" operation deferred base
+  [ -z "${GHMP_RUNNING_DEFERRED:-}" ] || return 0
+  operation="$(ghmp_bulk_operation "$3")"
+  deferred="$(ghmp_deferred_file "$hook")"
+  if [ -z "$operation" ]; then
+    if [ -f "$deferred" ]; then
+      GHMP_DEFERRED_BASE="$(sed -n 1p "$deferred")"
+      [ -n "$GHMP_DEFERRED_BASE" ] || GHMP_DEFERRED_BASE="$(git hash-object -t tree /dev/null)"
+      export GHMP_DEFERRED_BASE
+      echo "The $hook hook also covers the commits of the $(sed -n 2p "$deferred") it was deferred during"
+      rm -f "$deferred"
+    fi
+    return 0
+  fi
+  case "$policy" in
+    SKIP)
+      echo "Skipping the $hook hook during the $operation"
+      exit 0
+      ;;
+    DEFER)
+      if [ ! -f "$deferred" ]; then
+        # The commit the deferred changes start from: the parent of the commit being made, which is
+        # already HEAD after it was made
+        if [ "$hook" = "pre-commit" ]; then
+          base="$(git rev-parse -q --verify HEAD)" || base=""
+        else
+          base="$(git rev-parse -q --verify HEAD^)" || base=""
+        fi
+        mkdir -p "$(dirname "$deferred")"
+        printf '%s\n%s\n' "$base" "$operation" >"$deferred.$$"
+        mv -f "$deferred.$$" "$deferred"
+      fi
+      echo "Deferring the $hook hook to the end of the $operation"
+      exit 0
+      ;;
+  esac
+  return 0
+}
+
+# Runs the hooks deferred during a rebase, once each, over every change of the rebase. git removes
+# the rebase state only after running post-rewrite for the rebase, so that state counts as finished
+# then. Does nothing while a bulk operation is still in progress otherwise, e.g. for an amend in the
+# middle of a rebase. Fails with the exit code of the last failing hook.
+# Usage: ghmp_run_deferred <rewriting command> <marker variable> <hook name> <hook file>...
+ghmp_run_deferred() {
+  local command="$1" hook file deferred base operation status=0 hook_status
+  operation="$(ghmp_bulk_operation "$2")"
+  if [ -n "$operation" ] && { [ "$command" != "rebase" ] || [ "$operation" != "rebase" ]; }; then
+    return 0
+  fi
+  shift 2
+  while [ $# -ge 2 ]; do
+    hook="$1"
+    file="$2"
+    shift 2
+    deferred="$(ghmp_deferred_file "$hook")"
+    [ -f "$deferred" ] || continue
+    base="$(sed -n 1p "$deferred")"
+    operation="$(sed -n 2p "$deferred")"
+    rm -f "$deferred"
+    [ -n "$base" ] || base="$(git hash-object -t tree /dev/null)"
+    echo "Running the $hook hook deferred during the $operation"
+    hook_status=0
+    GHMP_RUNNING_DEFERRED=1 GHMP_DEFERRED_BASE="$base" bash "$file" </dev/null || hook_status=$?
+    [ $hook_status -eq 0 ] || status=$hook_status
+  done
+  return $status
+}
+
+# Keeps the remote the verification notes go to. Exits the hook successfully while they are being
+# pushed, should that push run the hooks anyway.
+# Usage: ghmp_verification_notes_init <remote>
+ghmp_verification_notes_init() {
+  [ -z "${GHMP_PUSHING_NOTES:-}" ] || exit 0
+  ghmp_notes_remote="$1"
+}
+
+# Prints the tree of HEAD, or fails when the work tree does not match it: the tree a hook running
+# on the work tree verifies.
+ghmp_verified_tree() {
+  git diff --quiet HEAD -- 2>/dev/null || return 1
+  [ -z "$(git ls-files --others --exclude-standard --directory --no-empty-directory | head -n 1)" ] \
+    || return 1
+  git rev-parse -q --verify 'HEAD^{tree}'
+}
+
+# Records that the hook command leaves part of its configured work out, so that no verification
+# note claims the whole configuration verified the tree. Does nothing outside of a verified run.
+# Usage: ghmp_partial_run <reason>
+ghmp_partial_run() {
+  [ -z "${ghmp_partial_run_file:-}" ] || echo "$1" >>"$ghmp_partial_run_file"
+}
+
+# Runs the pre-push command, then records its success as a note of each pushed commit whose tree
+# it verified, and pushes the notes to the remote. Notes of the remote are merged first, notes of the
+# same commit being concatenated. Nothing is recorded when the work tree does not match HEAD, before
+# and after the run, nor when the command skipped part of its work: the hook itself, a step, or the
+# modules the push does not affect. Failing to record or push the notes never fails the push.
+# The notes are pushed before git pushes the branch, since there is no hook after a push. This is
+# safe: a note is keyed by a commit, which always has the tree the note records, so a note of a
+# commit the remote then rejects stays true, should that commit be pushed later. It also spares the
+# continuous integration, triggered by the branch, a build started before the notes arrive.
+# Usage: ghmp_run_verified <hook name> <notes ref> <fingerprint> <function>
+ghmp_run_verified() {
+  local hook="$1" ref="$2" fingerprint="$3" remote="${ghmp_notes_remote:-}" tree start duration status note
+  local local_ref local_sha remote_ref remote_sha noted="" partial
+  ghmp_read_push_refs
+  tree="$(ghmp_verified_tree)" || tree=""
+  ghmp_temp_file ghmp_partial_run_file
+  if [ -n "${GHMP_AFFECTED_MODULES:-}" ]; then
+    ghmp_partial_run "only the modules affected by the push were built"
+  fi
+  start="$(ghmp_now_millis)"
+  # On the left of ||, the subshell would ignore set -e
+  set +e
+  (set -e; "$4")
+  status=$?
+  set -e
+  duration=$(($(ghmp_now_millis) - start))
+  # Wrappers may run this in a subshell, which does not clean up
+  partial="$(head -n 1 "$ghmp_partial_run_file")"
+  rm -f "$ghmp_partial_run_file"
+  ghmp_partial_run_file=""
+  [ $status -eq 0 ] || return $status
+  [ -n "$tree" ] && [ "$(ghmp_verified_tree || true)" = "$tree" ] || return 0
+  if [ -n "$partial" ]; then
+    echo "Not recording the $hook verification of tree $tree: $partial"
+    return 0
+  fi
+
+  ghmp_temp_file note
+  printf 'Signed-off-by-hook: %s\nTree: %s\nFingerprint: %s\nDuration-Millis: %s\nResult: passed\n' \
+    "$hook" "$tree" "$fingerprint" "$duration" >"$note"
+  # shellcheck disable=SC2034
+  while read -r local_ref local_sha remote_ref remote_sha; do
+    case "$local_sha" in
+      *[!0]*) ;;
+      *) continue ;;
+    esac
+    [ "$(git rev-parse -q --verify "$local_sha^{tree}" || true)" = "$tree" ] || continue
+    git notes --ref "$ref" add -f -F "$note" "$local_sha" >/dev/null 2>&1 && noted=1
+  done <<<"$ghmp_push_refs"
+  [ -n "$noted" ] && [ -n "$remote" ] || return 0
+
+  if GHMP_PUSHING_NOTES=1 git fetch -q --no-tags "$remote" "+$ref:$ref-fetched" 2>/dev/null; then
+    git notes --ref "$ref" merge -q -s cat_sort_uniq "$ref-fetched" >/dev/null 2>&1 || true
+    git update-ref -d "$ref-fetched" 2>/dev/null || true
+  fi
+  if GHMP_PUSHING_NOTES=1 git push -q --no-verify "$remote" "$ref:$ref" >/dev/null 2>&1; then
+    echo "Recorded the $hook verification of tree $tree in $ref"
+  else
+    echo "Could not push the $hook verification notes $ref to $remote" >&2
+  fi
+}
@@ -0,0 +1,45 @@
+package ms.imf.maven.plugin.git.hook;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.entry;
+
+import java.io.IOException;
+import org.junit.Test;
+
+public class PhaseTimerTest {
+
+  private long now;
+
+  private final PhaseTimer tested = new PhaseTimer(() -> now);
+
+  @Test
+  public void GIVEN_nested_phases_WHEN_timing_THEN_inner_time_should_be_deducted_from_outer()
+      throws Exception {
+    tested.run(
+        "outer",
+        () -> {
+          now += 10;
+          tested.run("inner", () -> now += 5);
+          now += 1;
+        });
+    tested.run("inner", () -> now += 2);
+
+    assertThat(tested.nanosByPhase()).containsExactly(entry("outer", 11L), entry("inner", 7L));
+  }
+
+  @Test
+  public void GIVEN_failing_phase_WHEN_timing_THEN_its_time_should_be_counted() {
+    assertThatThrownBy(
+            () ->
+                tested.run(
+                    "failing",
+                    () -> {
+                      now += 3;
+                      throw new IOException("failure");
+                    }))
+        .hasMessage("failure");
+
+    assertThat(tested.nanosByPhase()).containsExactly(entry("failing", 3L));
+  }
+}
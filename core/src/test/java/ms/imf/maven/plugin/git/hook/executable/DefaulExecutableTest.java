@@ -0,0 +1,101 @@
+package ms.imf.maven.plugin.git.hook.executable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermission;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.Set;
+import java.util.stream.Stream;
+import ms.imf.maven.plugin.git.hook.maven.TestingLog;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DefaulExecutableTest {
+
+  private static final String CALL = "/hooks/project.git-hook.pre-commit.sh";
+  private static final String ARGUMENTS = "\"$@\"";
+  private static final String CALL_LINE = "\"" + CALL + "\" " + ARGUMENTS;
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path file;
+
+  @Before
+  public void before() throws Exception {
+    file = temporaryFolder.getRoot().toPath().resolve("pre-commit");
+  }
+
+  @Test
+  public void GIVEN_batched_edits_WHEN_apply_THEN_they_should_be_applied_in_order()
+      throws Exception {
+    write("#!/bin/bash", CALL_LINE, "echo other");
+    Executable executable =
+        new ExecutableManager(TestingLog::new).getOrCreateExecutableScript(file);
+
+    boolean changed =
+        executable
+            .edit()
+            .removeCommandCall(CALL, ARGUMENTS)
+            .appendCommandCall(CALL, ARGUMENTS)
+            .apply();
+
+    assertThat(changed).isTrue();
+    assertThat(Files.readAllLines(file)).containsExactly("#!/bin/bash", "echo other", CALL_LINE);
+  }
+
+  @Test
+  public void GIVEN_identical_result_WHEN_apply_THEN_file_should_be_left_untouched()
+      throws Exception {
+    write("#!/bin/bash", "echo other", CALL_LINE);
+    Executable executable =
+        new ExecutableManager(TestingLog::new).getOrCreateExecutableScript(file);
+    FileTime modificationTime = FileTime.fromMillis(1_000_000_000_000L);
+    Files.setLastModifiedTime(file, modificationTime);
+    Object fileKey = Files.readAttributes(file, "unix:ino").get("ino");
+
+    boolean changed =
+        executable
+            .edit()
+            .removeCommandCall(CALL, ARGUMENTS)
+            .appendCommandCall(CALL, ARGUMENTS)
+            .apply();
+
+    assertThat(changed).isFalse();
+    assertThat(Files.getLastModifiedTime(file)).isEqualTo(modificationTime);
+    assertThat(Files.readAttributes(file, "unix:ino").get("ino")).isEqualTo(fileKey);
+  }
+
+  @Test
+  public void GIVEN_executable_WHEN_rewritten_THEN_it_should_stay_executable_without_leftovers()
+      throws Exception {
+    Executable executable =
+        new ExecutableManager(TestingLog::new).getOrCreateExecutableScript(file);
+    Set<PosixFilePermission> permissions = Files.getPosixFilePermissions(file);
+
+    executable.write("#!/bin/bash\necho rewritten\n");
+
+    assertThat(new String(Files.readAllBytes(file), StandardCharsets.UTF_8))
+        .isEqualTo("#!/bin/bash\necho rewritten\n");
+    assertThat(Files.getPosixFilePermissions(file))
+        .isEqualTo(permissions)
+        .containsAll(
+            EnumSet.of(
+                PosixFilePermission.OWNER_EXECUTE,
+                PosixFilePermission.GROUP_EXECUTE,
+                PosixFilePermission.OTHERS_EXECUTE));
+    try (Stream<Path> files = Files.list(file.getParent())) {
+      assertThat(files).containsExactly(file);
+    }
+  }
+
+  private void write(String... lines) throws Exception {
+    Files.write(file, Arrays.asList(lines), StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,76 @@
+package ms.imf.maven.plugin.git.hook.executable;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Collections;
+import ms.imf.maven.plugin.git.hook.maven.TestingLog;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class DefaultCommandRunnerTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final DefaultCommandRunner tested = new DefaultCommandRunner(TestingLog::new, 10);
+
+  @Test(timeout = 30_000)
+  public void GIVEN_command_flooding_stderr_WHEN_run_THEN_it_should_not_deadlock() {
+    String output =
+        tested.run(
+            null,
+            Collections.emptyMap(),
+            "bash",
+            "-c",
+            "for i in $(seq 1 50000); do echo \"error line $i\" >&2; done; echo done");
+
+    assertThat(output).contains("done");
+  }
+
+  @Test
+  public void GIVEN_failing_command_WHEN_run_THEN_exception_should_contain_bounded_tail() {
+    assertThatThrownBy(
+            () ->
+                tested.run(
+                    null,
+                    Collections.emptyMap(),
+                    "bash",
+                    "-c",
+                    "for i in $(seq 1 1000); do echo \"line $i\"; done; exit 3"))
+        .isInstanceOfSatisfying(
+            CommandRunException.class,
+            e -> {
+              assertThat(e.getExitCode()).isEqualTo(3);
+              assertThat(e.isTimedOut()).isFalse();
+              assertThat(e.getMessage())
+                  .contains("line 1000")
+                  .contains("990 earlier lines omitted")
+                  .doesNotContain("line 990\n");
+            });
+  }
+
+  @Test(timeout = 30_000)
+  public void GIVEN_hanging_command_WHEN_timeout_expires_THEN_process_tree_should_be_killed()
+      throws Exception {
+    Path marker = temporaryFolder.getRoot().toPath().resolve("marker");
+
+    assertThatThrownBy(
+            () ->
+                tested.run(
+                    null,
+                    Collections.emptyMap(),
+                    Duration.ofMillis(500),
+                    "bash",
+                    "-c",
+                    "(sleep 2; touch '" + marker + "') & wait"))
+        .isInstanceOfSatisfying(
+            CommandRunException.class, e -> assertThat(e.isTimedOut()).isTrue());
+
+    Thread.sleep(3000);
+    assertThat(Files.exists(marker)).isFalse();
+  }
+}
@@ -0,0 +1,104 @@
+package ms.imf.maven.plugin.git.hook.git;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import ms.imf.maven.plugin.git.hook.maven.TestingLog;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.lib.PersonIdent;
+import org.eclipse.jgit.lib.StoredConfig;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class GitLayoutResolverTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final GitLayoutResolver tested = new GitLayoutResolver(TestingLog::new);
+
+  private Path workTree;
+  private Git git;
+
+  @Before
+  public void before() throws Exception {
+    workTree = temporaryFolder.newFolder("repository").toPath().toRealPath();
+    git = Git.init().setDirectory(workTree.toFile()).call();
+    Files.createDirectories(workTree.resolve("module/src"));
+    Files.createFile(workTree.resolve("module/pom.xml"));
+    PersonIdent identity = new PersonIdent("John Doe", "john.doe@example.org");
+    git.add().addFilepattern(".").call();
+    git.commit().setAuthor(identity).setCommitter(identity).setMessage("First commit").call();
+  }
+
+  @Test
+  public void
+      GIVEN_nested_directory_WHEN_resolve_THEN_layout_should_point_to_enclosing_repository() {
+    GitLayout layout = tested.resolve(workTree.resolve("module/src"));
+
+    assertThat(layout.gitDirectory()).isEqualTo(workTree.resolve(".git"));
+    assertThat(layout.commonDirectory()).isEqualTo(workTree.resolve(".git"));
+    assertThat(layout.workTree()).isEqualTo(workTree);
+    assertThat(layout.hooksDirectory()).isEqualTo(workTree.resolve(".git/hooks"));
+  }
+
+  @Test
+  public void GIVEN_relative_hooks_path_WHEN_resolve_THEN_hooks_directory_should_be_in_work_tree()
+      throws Exception {
+    setHooksPath(".githooks");
+
+    assertThat(tested.resolve(workTree.resolve("module")).hooksDirectory())
+        .isEqualTo(workTree.resolve(".githooks"));
+  }
+
+  @Test
+  public void GIVEN_absolute_hooks_path_WHEN_resolve_THEN_hooks_directory_should_be_used_as_is()
+      throws Exception {
+    Path hooks = temporaryFolder.newFolder("shared-hooks").toPath();
+    setHooksPath(hooks.toString());
+
+    assertThat(tested.resolve(workTree).hooksDirectory()).isEqualTo(hooks);
+  }
+
+  @Test
+  public void GIVEN_changed_hooks_path_WHEN_resolve_again_THEN_memoized_layout_should_be_dropped()
+      throws Exception {
+    GitLayout first = tested.resolve(workTree);
+    assertThat(tested.resolve(workTree)).isSameAs(first);
+
+    setHooksPath(".githooks");
+    // Make sure the change is visible even on file systems with a coarse time resolution
+    Files.setLastModifiedTime(
+        workTree.resolve(".git/config"), FileTime.fromMillis(System.currentTimeMillis() + 10_000));
+
+    assertThat(tested.resolve(workTree).hooksDirectory()).isEqualTo(workTree.resolve(".githooks"));
+  }
+
+  @Test
+  public void GIVEN_linked_work_tree_WHEN_resolve_THEN_hooks_should_be_in_common_directory()
+      throws Exception {
+    Path linkedWorkTree = temporaryFolder.getRoot().toPath().toRealPath().resolve("linked");
+    Process process =
+        new ProcessBuilder("git", "worktree", "add", linkedWorkTree.toString())
+            .directory(workTree.toFile())
+            .inheritIO()
+            .start();
+    assertThat(process.waitFor()).isZero();
+
+    GitLayout layout = tested.resolve(linkedWorkTree.resolve("module"));
+
+    assertThat(layout.gitDirectory()).isEqualTo(workTree.resolve(".git/worktrees/linked"));
+    assertThat(layout.commonDirectory()).isEqualTo(workTree.resolve(".git"));
+    assertThat(layout.workTree()).isEqualTo(linkedWorkTree);
+    assertThat(layout.hooksDirectory()).isEqualTo(workTree.resolve(".git/hooks"));
+  }
+
+  private void setHooksPath(String hooksPath) throws Exception {
+    StoredConfig config = git.getRepository().getConfig();
+    config.setString("core", null, "hooksPath", hooksPath);
+    config.save();
+  }
+}
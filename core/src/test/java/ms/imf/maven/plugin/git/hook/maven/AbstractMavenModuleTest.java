@@ -6,10 +6,24 @@ import io.takari.maven.testing.executor.MavenExecution;
 import io.takari.maven.testing.executor.MavenRuntime;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 import org.apache.commons.io.IOUtils;
+import org.eclipse.jgit.api.Git;
+import org.eclipse.jgit.transport.RefSpec;
 import org.junit.Test;
 
 /**
@@ -17,6 +31,8 @@ import org.junit.Test;
  */
 public abstract class AbstractMavenModuleTest extends AbstractTest {
 
+  private static final String NOTES_REF = "refs/notes/git-hook-maven-plugin";
+
   private final String mavenModuleDirectory;
 
   public AbstractMavenModuleTest(
@@ -137,6 +153,752 @@ public abstract class AbstractMavenModuleTest extends AbstractTest {
     }
   }
 
+  @Test
+  public void GIVEN_installed_hooks_WHEN_install_hooks_again_THEN_no_file_should_be_written()
+      throws Exception {
+    String[] cliOptions = {
+      "-Dghmp.preCommitCommandMavenPrefix=true",
+      "-Dghmp.preCommitHookContent=validate",
+      "-Dghmp.prePushHookContent=echo push"
+    };
+    mavenExecution().withCliOptions(cliOptions).execute("initialize").assertErrorFreeLog();
+
+    Path hooksDir = projectRoot().resolve(".git/hooks");
+    FileTime pastTime = FileTime.fromMillis(1_000_000_000_000L);
+    Map<Path, FileTime> modificationTimes = new HashMap<>();
+    try (Stream<Path> files = Files.list(hooksDir)) {
+      for (Path file : files.collect(Collectors.toList())) {
+        Files.setLastModifiedTime(file, pastTime);
+        modificationTimes.put(file, pastTime);
+      }
+    }
+
+    mavenExecution()
+        .withCliOptions(cliOptions)
+        .execute("initialize")
+        .assertErrorFreeLog()
+        .assertLogText("Git hooks are up to date");
+
+    try (Stream<Path> files = Files.list(hooksDir)) {
+      Map<Path, FileTime> actualModificationTimes = new HashMap<>();
+      for (Path file : files.collect(Collectors.toList())) {
+        actualModificationTimes.put(file, Files.getLastModifiedTime(file));
+      }
+      assertThat(actualModificationTimes).isEqualTo(modificationTimes);
+    }
+  }
+
+  @Test
+  public void GIVEN_phase_timing_report_WHEN_install_hooks_THEN_phase_times_should_be_reported()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.preCommitHookContent=echo first",
+            "-Dghmp.phaseTimingThreshold=0",
+            "-Dghmp.phaseTimingReport=true")
+        .execute("initialize")
+        .assertErrorFreeLog()
+        .assertLogText("install-hooks took ")
+        .assertLogText("pre-commit.content ");
+
+    String report =
+        readFileContent(
+            projectRoot()
+                .resolve(mavenModuleDirectory)
+                .resolve("target/git-hook-install-timing.json"));
+    assertThat(report)
+        .startsWith("{\"goal\":\"install-hooks\",\"installed\":true,\"totalMillis\":")
+        .contains("\"git-layout\":", "\"fingerprint\":", "\"pre-commit.scripts\":");
+  }
+
+  @Test
+  public void
+      GIVEN_reinstall_on_checkout_WHEN_build_files_are_unchanged_THEN_only_they_are_checked()
+          throws Exception {
+    String[] cliOptions = {
+      "-Dghmp.reinstallOnCheckout=true",
+      "-Dghmp.preCommitHookContent=echo first",
+      "-Dghmp.phaseTimingReport=true"
+    };
+    mavenExecution().withCliOptions(cliOptions).execute("initialize").assertErrorFreeLog();
+
+    Path hooksDir = projectRoot().resolve(".git/hooks");
+    for (String hookName : Arrays.asList("post-checkout", "post-merge")) {
+      String pluginHookFile = getProjectArtifactId() + ".git-hook." + hookName + ".sh";
+      assertThat(readFileContent(hooksDir.resolve(hookName))).contains(pluginHookFile);
+      assertThat(readFileContent(hooksDir.resolve(pluginHookFile)))
+          .contains("ghmp_reinstall_hooks '" + hookName + "' ");
+    }
+
+    mavenExecution()
+        .withCliOptions(cliOptions)
+        .execute("initialize")
+        .assertErrorFreeLog()
+        .assertLogText("Git hooks are up to date");
+    Path report =
+        projectRoot().resolve(mavenModuleDirectory).resolve("target/git-hook-install-timing.json");
+    assertThat(readFileContent(report))
+        .contains("\"installed\":false", "\"install-stamp\":")
+        .doesNotContain("\"git-layout\":");
+
+    touch(Paths.get(mavenModuleDirectory, "pom.xml").toString());
+    mavenExecution()
+        .withCliOptions(cliOptions)
+        .execute("initialize")
+        .assertErrorFreeLog()
+        .assertLogText("Git hooks are up to date");
+    assertThat(readFileContent(report)).contains("\"git-layout\":");
+  }
+
+  @Test
+  public void GIVEN_direct_commands_only_WHEN_installing_hooks_THEN_maven_is_never_resolved()
+      throws Exception {
+    for (int i = 0; i < 2; i++) {
+      mavenExecution()
+          .withCliOptions("-Dghmp.preCommitHookContent=echo direct")
+          .execute("initialize")
+          .assertErrorFreeLog();
+    }
+
+    assertThat(projectRoot().resolve(".git/git-hook-maven-plugin/maven-executable.cache"))
+        .doesNotExist();
+  }
+
+  @Test
+  public void
+      GIVEN_reinstall_on_checkout_WHEN_a_propagated_property_changes_THEN_hooks_are_reinstalled()
+          throws Exception {
+    String[] cliOptions = {
+      "-Dghmp.reinstallOnCheckout=true",
+      "-Dghmp.preCommitCommandMavenPrefix=true",
+      "-Dghmp.preCommitHookContent=validate",
+      "-Dghmp.preCommitPropertiesToPropagate=skipTests"
+    };
+    mavenExecution()
+        .withCliOptions(cliOptions)
+        .withCliOption("-DskipTests=true")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    mavenExecution()
+        .withCliOptions(cliOptions)
+        .withCliOption("-DskipTests=false")
+        .execute("initialize")
+        .assertErrorFreeLog()
+        .assertNoLogText("Git hooks are up to date");
+    assertThat(
+            readFileContent(
+                projectRoot()
+                    .resolve(".git/hooks")
+                    .resolve(getProjectArtifactId() + ".git-hook.pre-commit.sh")))
+        .contains("-DskipTests=false");
+  }
+
+  @Test
+  public void GIVEN_installed_hooks_WHEN_configuration_changes_THEN_hooks_should_be_reinstalled()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions("-Dghmp.preCommitHookContent=echo first")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    mavenExecution()
+        .withCliOptions("-Dghmp.preCommitHookContent=echo second")
+        .execute("initialize")
+        .assertErrorFreeLog()
+        .assertLogText("Installed git hooks");
+
+    Path preCommitPluginHook =
+        projectRoot()
+            .resolve(".git/hooks")
+            .resolve(getProjectArtifactId() + ".git-hook.pre-commit.sh");
+    assertThat(readFileContent(preCommitPluginHook))
+        .contains("echo second")
+        .doesNotContain("echo first");
+  }
+
+  @Test
+  public void
+      GIVEN_staged_files_mode_WHEN_running_pre_commit_THEN_selected_staged_files_are_exposed()
+          throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.preCommitStagedFiles=true",
+            "-Dghmp.preCommitStagedFilesIncludes=**/*.xml",
+            "-Dghmp.preCommitStagedFilesExcludes=excluded/**",
+            "-Dghmp.preCommitHookContent=echo \"$GHMP_STAGED_FILES_COUNT:$GHMP_STAGED_FILES\" >"
+                + " staged")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    Files.write(projectRoot().resolve("selected.xml"), "<a/>".getBytes(StandardCharsets.UTF_8));
+    Files.write(projectRoot().resolve("ignored.md"), "a".getBytes(StandardCharsets.UTF_8));
+    Files.createDirectories(projectRoot().resolve("excluded"));
+    Files.write(
+        projectRoot().resolve("excluded/other.xml"), "<a/>".getBytes(StandardCharsets.UTF_8));
+    jGit().add().addFilepattern(".").call();
+
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(readFileContent(projectRoot().resolve("staged")).trim()).isEqualTo("1:selected.xml");
+  }
+
+  @Test
+  public void GIVEN_staged_files_mode_WHEN_no_staged_file_is_selected_THEN_hook_is_skipped()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.preCommitStagedFiles=true",
+            "-Dghmp.preCommitStagedFilesIncludes=**/*.java",
+            "-Dghmp.preCommitHookContent=exit 1")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    Files.write(projectRoot().resolve("ignored.md"), "a".getBytes(StandardCharsets.UTF_8));
+    jGit().add().addFilepattern(".").call();
+
+    assertThat(runHook("pre-commit")).isZero();
+  }
+
+  @Test
+  public void GIVEN_maven_daemon_mode_WHEN_mvnd_is_unavailable_THEN_hook_falls_back_to_mvn()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions("-Dghmp.preCommitHookContent=true")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    Path runtime =
+        projectRoot()
+            .resolve(".git/hooks")
+            .resolve(getProjectArtifactId() + ".git-hook.runtime.sh");
+
+    assertThat(mavenCommand(runtime, "/missing/mvnd", "-T1", "--", "/opt/maven/bin/mvn"))
+        .isEqualTo("/opt/maven/bin/mvn");
+    assertThat(mavenCommand(runtime, "bash", "-T1", "--", "/opt/maven/bin/mvn"))
+        .isEqualTo("bash -T1");
+  }
+
+  /** Runs the runtime maven client selection and returns the selected command */
+  private String mavenCommand(Path runtime, String... arguments) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("bash");
+    command.add("-c");
+    command.add(". \"$0\" && ghmp_maven_command \"$@\" && echo \"${GHMP_MAVEN_COMMAND[*]}\"");
+    command.add(runtime.toString());
+    command.addAll(Arrays.asList(arguments));
+    Process process =
+        new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    String output;
+    try (InputStream inputStream = process.getInputStream()) {
+      output = IOUtils.toString(inputStream, StandardCharsets.UTF_8);
+    }
+    assertThat(process.waitFor()).isZero();
+    return output.trim();
+  }
+
+  @Test
+  public void GIVEN_result_cache_WHEN_content_already_passed_THEN_command_is_not_run_again()
+      throws Exception {
+    installCachedPreCommitHook("echo run >> \"$(git rev-parse --git-dir)/runs\"");
+
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(commandRuns()).isEqualTo(1);
+
+    touch(Paths.get(mavenModuleDirectory, "pom.xml").toString());
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(commandRuns()).isEqualTo(2);
+  }
+
+  @Test
+  public void GIVEN_result_cache_WHEN_content_already_failed_THEN_failure_is_replayed()
+      throws Exception {
+    installCachedPreCommitHook(
+        "echo run >> \"$(git rev-parse --git-dir)/runs\"; echo failure-output; exit 3");
+    Path output = projectRoot().resolve(".git/output");
+
+    assertThat(runHook("pre-commit", output)).isEqualTo(3);
+    assertThat(runHook("pre-commit", output)).isEqualTo(3);
+    assertThat(commandRuns()).isEqualTo(1);
+    assertThat(readFileContent(output)).contains("failure-output");
+  }
+
+  @Test
+  public void
+      GIVEN_post_commit_result_cache_WHEN_only_the_index_changed_THEN_it_should_not_be_cached()
+          throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.postCommitResultCache=true",
+            "-Dghmp.postCommitHookContent=echo run >> \"$(git rev-parse --git-dir)/runs\"")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    assertThat(runGit(projectRoot(), "commit", "-q", "--allow-empty", "-m", "Empty")).isZero();
+    assertThat(commandRuns()).isEqualTo(1);
+    assertThat(runHook("post-commit")).isZero();
+    assertThat(commandRuns()).isEqualTo(1);
+
+    // Staged content is not the commit tree the hook verifies
+    String pom = Paths.get(mavenModuleDirectory, "pom.xml").toString();
+    touch(pom);
+    assertThat(runGit(projectRoot(), "add", "--", pom)).isZero();
+    assertThat(runHook("post-commit")).isZero();
+    assertThat(runHook("post-commit")).isZero();
+    assertThat(commandRuns()).isEqualTo(3);
+
+    assertThat(runGit(projectRoot(), "commit", "-q", "-m", "Touch")).isZero();
+    assertThat(runHook("post-commit")).isZero();
+    assertThat(commandRuns()).isEqualTo(4);
+  }
+
+  @Test
+  public void GIVEN_full_result_cache_WHEN_a_temporary_file_is_left_THEN_it_should_be_evicted()
+      throws Exception {
+    installCachedPreCommitHook("true", "-Dghmp.resultCacheMaxSize=0");
+    Path store =
+        Files.createDirectories(projectRoot().resolve(".git/git-hook-maven-plugin/results"));
+    Path leftover = store.resolve("0123456789abcdef.log.12345");
+    Files.write(leftover, "interrupted".getBytes(StandardCharsets.UTF_8));
+    Files.setLastModifiedTime(
+        leftover, FileTime.fromMillis(System.currentTimeMillis() - TimeUnit.HOURS.toMillis(1)));
+
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(leftover).doesNotExist();
+  }
+
+  @Test
+  public void GIVEN_background_post_commit_WHEN_committing_quickly_THEN_runs_should_coalesce()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.postCommitBackground=true",
+            "-Dghmp.postCommitBackgroundNiceness=10",
+            "-Dghmp.postCommitHookContent=sleep 2; echo run >> \"$(git rev-parse --git-dir)/runs\"")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    long start = System.nanoTime();
+    for (int i = 0; i < 3; i++) {
+      assertThat(runHook("post-commit")).isZero();
+    }
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(2);
+
+    Path backgroundDirectory = projectRoot().resolve(".git/git-hook-maven-plugin/background");
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (Files.exists(backgroundDirectory.resolve("post-commit.lock"))
+        && System.nanoTime() < deadline) {
+      Thread.sleep(100);
+    }
+    assertThat(backgroundDirectory.resolve("post-commit.lock")).doesNotExist();
+    assertThat(commandRuns()).isBetween(1, 2);
+    assertThat(readFileContent(backgroundDirectory.resolve("post-commit.log")))
+        .contains("==> post-commit for " + head() + " finished with exit code 0");
+  }
+
+  @Test
+  public void GIVEN_background_post_commit_WHEN_a_command_fails_THEN_the_run_should_stop()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.postCommitBackground=true",
+            "-Dghmp.postCommitHookContent=false; echo run >> \"$(git rev-parse --git-dir)/runs\"")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    assertThat(runHook("post-commit")).isZero();
+
+    Path log = projectRoot().resolve(".git/git-hook-maven-plugin/background/post-commit.log");
+    String finished = "==> post-commit for " + head() + " finished with exit code ";
+    long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(30);
+    while (!(Files.exists(log) && readFileContent(log).contains(finished))
+        && System.nanoTime() < deadline) {
+      Thread.sleep(100);
+    }
+    assertThat(readFileContent(log)).contains(finished + "1");
+    assertThat(projectRoot().resolve(".git/runs")).doesNotExist();
+  }
+
+  @Test
+  public void GIVEN_fast_profile_WHEN_running_hook_THEN_maven_should_run_tuned() throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.hookFastProfile=true",
+            "-Dghmp.hookFastProfileOffline=ALWAYS",
+            "-Dghmp.preCommitCommandMavenPrefix=true",
+            "-Dghmp.preCommitHookContent=validate")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    String hookContent =
+        readFileContent(
+            projectRoot()
+                .resolve(".git/hooks")
+                .resolve(getProjectArtifactId() + ".git-hook.pre-commit.sh"));
+    assertThat(hookContent).contains("ghmp_run_offline ").contains(" -T '1C' -q ");
+    assertThat(runHook("pre-commit")).isZero();
+  }
+
+  @Test
+  public void GIVEN_maven_daemon_and_offline_fast_profile_WHEN_running_hook_THEN_mvnd_runs_offline()
+      throws Exception {
+    String[] options = {
+      "-Dghmp.preCommitMavenDaemon=true",
+      "-Dghmp.mavenDaemonWarmUp=false",
+      "-Dghmp.hookFastProfile=true",
+      "-Dghmp.hookFastProfileOffline=ALWAYS",
+      "-Dghmp.preCommitCommandMavenPrefix=true",
+      "-Dghmp.preCommitHookContent=validate"
+    };
+    mavenExecution().withCliOptions(options).execute("initialize").assertErrorFreeLog();
+
+    // No mvnd here: resolve it to a client recording its arguments, then running mvn
+    Path cacheFile = projectRoot().resolve(".git/git-hook-maven-plugin/maven-executable.cache");
+    Properties cache = new Properties();
+    try (InputStream inputStream = Files.newInputStream(cacheFile)) {
+      cache.load(inputStream);
+    }
+    String mavenExecutable =
+        cache.stringPropertyNames().stream()
+            .map(cache::getProperty)
+            .filter(value -> !value.isEmpty())
+            .findFirst()
+            .orElseThrow(IllegalStateException::new);
+    Path mavenDaemon = projectRoot().resolveSibling(projectRoot().getFileName() + "-mvnd");
+    Files.write(
+        mavenDaemon,
+        ("#!/bin/sh\necho \"$@\" > \"$(git rev-parse --git-dir)/mvnd-args\"\nexec '"
+                + mavenExecutable
+                + "' \"$@\"\n")
+            .getBytes(StandardCharsets.UTF_8));
+    assertThat(mavenDaemon.toFile().setExecutable(true)).isTrue();
+    for (String key : cache.stringPropertyNames()) {
+      if (cache.getProperty(key).isEmpty()) {
+        cache.setProperty(key, mavenDaemon.toString());
+      }
+    }
+    try (OutputStream outputStream = Files.newOutputStream(cacheFile)) {
+      cache.store(outputStream, null);
+    }
+    // The cache is no input of the installation: remove the hook so that it gets written again
+    Path hook =
+        projectRoot()
+            .resolve(".git/hooks")
+            .resolve(getProjectArtifactId() + ".git-hook.pre-commit.sh");
+    Files.delete(hook);
+    mavenExecution().withCliOptions(options).execute("initialize").assertErrorFreeLog();
+
+    String hookContent = readFileContent(hook);
+    assertThat(hookContent)
+        .contains("ghmp_maven_command '" + mavenDaemon + "'")
+        .contains("\nghmp_run_offline \"${GHMP_MAVEN_COMMAND[@]}\" -f ");
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(readFileContent(projectRoot().resolve(".git/mvnd-args"))).startsWith("-o ");
+  }
+
+  @Test
+  public void GIVEN_isolated_build_output_WHEN_running_hook_THEN_target_should_be_left_untouched()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.hookIsolatedBuildOutput=true",
+            "-Dghmp.preCommitCommandMavenPrefix=true",
+            "-Dghmp.preCommitHookContent=initialize -Dghmp.reinstallOnCheckout=true")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    assertThat(runHook("pre-commit")).isZero();
+
+    assertThat(
+            projectRoot()
+                .resolve(".git/git-hook-maven-plugin/build")
+                .resolve(mavenModuleDirectory)
+                .resolve("target/git-hook-install.stamp"))
+        .exists();
+    assertThat(projectRoot().resolve(mavenModuleDirectory).resolve("target/git-hook-install.stamp"))
+        .doesNotExist();
+  }
+
+  @Test
+  public void GIVEN_deferred_hook_WHEN_rebasing_THEN_it_should_run_once_after_the_rebase()
+      throws Exception {
+    // The commits are made before the hooks are installed
+    assertThat(runGit(projectRoot(), "checkout", "-q", "-b", "topic")).isZero();
+    for (int i = 0; i < 3; i++) {
+      commitNewFile("topic-" + i + ".txt");
+    }
+    assertThat(runGit(projectRoot(), "checkout", "-q", "master")).isZero();
+    commitNewFile("master-0.txt");
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.postCommitBulkOperationPolicy=DEFER",
+            "-Dghmp.postCommitHookContent=echo run >> \"$(git rev-parse --git-common-dir)/runs\"")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    assertThat(runGit(projectRoot(), "checkout", "-q", "topic")).isZero();
+
+    assertThat(runGit(projectRoot(), "rebase", "-q", "master")).isZero();
+    assertThat(commandRuns()).isEqualTo(1);
+    assertThat(projectRoot().resolve(".git/git-hook-maven-plugin/deferred/post-commit"))
+        .doesNotExist();
+
+    assertThat(runGit(projectRoot(), "checkout", "-q", "master")).isZero();
+    commitNewFile("master-1.txt");
+    assertThat(commandRuns()).isEqualTo(2);
+    assertThat(runGit(projectRoot(), "checkout", "-q", "topic")).isZero();
+    assertThat(runGit(projectRoot(), "-c", "sequence.editor=true", "rebase", "-q", "-i", "master"))
+        .isZero();
+    assertThat(commandRuns()).isEqualTo(3);
+  }
+
+  /** Commits a new file at the work tree root through the git command line, hooks included */
+  private void commitNewFile(String name) throws Exception {
+    Files.write(projectRoot().resolve(name), name.getBytes(StandardCharsets.UTF_8));
+    assertThat(runGit(projectRoot(), "add", "--", name)).isZero();
+    assertThat(runGit(projectRoot(), "commit", "-q", "-m", "Add " + name)).isZero();
+  }
+
+  @Test
+  public void GIVEN_skipped_hook_WHEN_bulk_operation_marker_is_set_THEN_it_should_not_run()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.preCommitBulkOperationPolicy=SKIP",
+            "-Dghmp.bulkOperationMarker=HOME",
+            "-Dghmp.preCommitHookContent=echo run >> \"$(git rev-parse --git-dir)/runs\"")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(projectRoot().resolve(".git/runs")).doesNotExist();
+    assertThat(
+            projectRoot()
+                .resolve(".git/hooks")
+                .resolve(getProjectArtifactId() + ".git-hook.post-rewrite.sh"))
+        .doesNotExist();
+  }
+
+  @Test
+  public void GIVEN_staged_snapshot_WHEN_running_pre_commit_THEN_staged_content_should_be_checked()
+      throws Exception {
+    Path seen = projectRoot().resolve(".git/seen");
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.preCommitStagedSnapshot=true",
+            "-Dghmp.preCommitHookContent=cat checked.txt > " + seen)
+        .execute("initialize")
+        .assertErrorFreeLog();
+    Path checked = projectRoot().resolve("checked.txt");
+    Path unchanged = projectRoot().resolve("unchanged.txt");
+    Files.write(checked, "staged".getBytes(StandardCharsets.UTF_8));
+    Files.write(unchanged, "unchanged".getBytes(StandardCharsets.UTF_8));
+    jGit().add().addFilepattern(".").call();
+    Files.write(checked, "unstaged".getBytes(StandardCharsets.UTF_8));
+
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(readFileContent(seen)).isEqualTo("staged");
+
+    Path snapshot = projectRoot().resolve(".git/git-hook-maven-plugin/snapshot");
+    FileTime modificationTime = FileTime.fromMillis(1_000_000_000_000L);
+    Files.setLastModifiedTime(snapshot.resolve("unchanged.txt"), modificationTime);
+    jGit().add().addFilepattern("checked.txt").call();
+
+    assertThat(runHook("pre-commit")).isZero();
+    assertThat(readFileContent(seen)).isEqualTo("unstaged");
+    assertThat(Files.getLastModifiedTime(snapshot.resolve("unchanged.txt")))
+        .isEqualTo(modificationTime);
+    assertThat(readFileContent(checked)).isEqualTo("unstaged");
+  }
+
+  @Test
+  public void GIVEN_quiet_output_WHEN_running_hook_THEN_output_should_go_to_the_log()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.hookOutputMode=QUIET",
+            "-Dghmp.hookOutputTailLines=2",
+            "-Dghmp.preCommitHookContent=seq 1 5; [ ! -f fail ] || exit 3")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    Path output = projectRoot().resolve(".git/output");
+    Path log = projectRoot().resolve(".git/git-hook-maven-plugin/logs/pre-commit.log");
+
+    assertThat(runHook("pre-commit", output)).isZero();
+    assertThat(readFileContent(output))
+        .matches("==> pre-commit running\\.\\.\\. passed in \\S+s\n");
+    assertThat(readFileContent(log)).contains("1\n2\n3\n4\n5\n");
+
+    Files.write(projectRoot().resolve("fail"), new byte[0]);
+    assertThat(runHook("pre-commit", output)).isEqualTo(3);
+    List<String> lines = Files.readAllLines(output);
+    assertThat(lines.get(0)).startsWith("==> pre-commit running... failed with exit code 3 in ");
+    assertThat(lines.subList(1, lines.size()))
+        .containsExactly(
+            "5",
+            "==> pre-commit finished with exit code 3",
+            "The full output is in " + log.toRealPath());
+  }
+
+  @Test
+  public void GIVEN_quiet_output_WHEN_an_earlier_command_fails_THEN_the_hook_should_fail()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.hookOutputMode=QUIET",
+            "-Dghmp.preCommitHookContent=echo first\nfalse\necho second")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    Path output = projectRoot().resolve(".git/output");
+    Path log = projectRoot().resolve(".git/git-hook-maven-plugin/logs/pre-commit.log");
+
+    assertThat(runHook("pre-commit", output)).isEqualTo(1);
+    assertThat(readFileContent(output))
+        .startsWith("==> pre-commit running... failed with exit code 1 in ");
+    assertThat(readFileContent(log))
+        .contains("first\n==> pre-commit finished with exit code 1")
+        .doesNotContain("second");
+  }
+
+  @Test
+  public void GIVEN_verification_notes_WHEN_pushing_THEN_ci_should_find_the_verification()
+      throws Exception {
+    String[] options = {"-Dghmp.verificationNotes=true", "-Dghmp.prePushHookContent=echo verified"};
+    mavenExecution().withCliOptions(options).execute("initialize").assertErrorFreeLog();
+    Path remote = commitToNewRemote();
+
+    assertThat(runGit(projectRoot(), "push", "-q", remote.toString(), "HEAD:refs/heads/master"))
+        .isZero();
+
+    Path ci = projectRoot().resolveSibling(projectRoot().getFileName() + "-ci");
+    try (Git clone =
+        Git.cloneRepository().setURI(remote.toUri().toString()).setDirectory(ci.toFile()).call()) {
+      clone.fetch().setRefSpecs(new RefSpec(NOTES_REF + ":" + NOTES_REF)).call();
+    }
+    buildMavenExecution(ci.resolve(mavenModuleDirectory))
+        .withCliOptions(options)
+        .execute(goalCliOption("check-verification-note"))
+        .assertErrorFreeLog()
+        .assertLogText("The pre-push hook already verified the tree");
+    buildMavenExecution(ci.resolve(mavenModuleDirectory))
+        .withCliOptions("-Dghmp.prePushHookContent=echo other")
+        .execute(goalCliOption("check-verification-note"))
+        .assertErrorFreeLog()
+        .assertLogText("is for another tree or another pre-push configuration");
+  }
+
+  @Test
+  public void GIVEN_verification_notes_WHEN_an_earlier_command_fails_THEN_nothing_is_recorded()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.verificationNotes=true", "-Dghmp.prePushHookContent=false\necho verified")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    Path remote = commitToNewRemote();
+
+    assertThat(runGit(projectRoot(), "push", "-q", remote.toString(), "HEAD:refs/heads/master"))
+        .isNotZero();
+    assertThat(runGit(projectRoot(), "rev-parse", "-q", "--verify", NOTES_REF)).isNotZero();
+    assertThat(runGit(remote, "rev-parse", "-q", "--verify", NOTES_REF)).isNotZero();
+  }
+
+  @Test
+  public void GIVEN_verification_notes_WHEN_the_hook_is_skipped_THEN_nothing_is_recorded()
+      throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.verificationNotes=true",
+            "-Dghmp.prePushIncludes=**/*.unknown",
+            "-Dghmp.prePushHookContent=echo verified")
+        .execute("initialize")
+        .assertErrorFreeLog();
+    Path remote = commitToNewRemote();
+
+    assertThat(runGit(projectRoot(), "push", "-q", remote.toString(), "HEAD:refs/heads/master"))
+        .isZero();
+    assertThat(runGit(projectRoot(), "rev-parse", "-q", "--verify", NOTES_REF)).isNotZero();
+    assertThat(runGit(remote, "rev-parse", "-q", "--verify", NOTES_REF)).isNotZero();
+  }
+
+  /** Commits the work tree, then creates an empty bare remote next to the project */
+  private Path commitToNewRemote() throws Exception {
+    jGit().add().addFilepattern(".").call();
+    jGit()
+        .commit()
+        .setCommitter(gitIdentity())
+        .setAuthor(gitIdentity())
+        .setMessage("Verified")
+        .call();
+    Path remote = projectRoot().resolveSibling(projectRoot().getFileName() + "-remote.git");
+    Git.init().setBare(true).setDirectory(remote.toFile()).call().close();
+    return remote;
+  }
+
+  /** Installs the hook, then commits everything so that the working tree matches the index */
+  private void installCachedPreCommitHook(String command, String... cliOptions) throws Exception {
+    mavenExecution()
+        .withCliOptions(
+            "-Dghmp.preCommitResultCache=true", "-Dghmp.preCommitHookContent=" + command)
+        .withCliOptions(cliOptions)
+        .execute("initialize")
+        .assertErrorFreeLog();
+    jGit().add().addFilepattern(".").call();
+    jGit()
+        .commit()
+        .setCommitter(gitIdentity())
+        .setAuthor(gitIdentity())
+        .setMessage("Install")
+        .setNoVerify(true)
+        .call();
+  }
+
+  private String head() throws IOException {
+    return jGit().getRepository().resolve("HEAD").name();
+  }
+
+  private int commandRuns() throws IOException {
+    return Files.readAllLines(projectRoot().resolve(".git/runs")).size();
+  }
+
+  /** Runs an installed plugin hook the way git does, from the work tree root */
+  private int runHook(String hookName) throws Exception {
+    return runHook(hookName, null);
+  }
+
+  /**
+   * @param output The file receiving the hook output, or null to inherit it
+   */
+  private int runHook(String hookName, Path output) throws Exception {
+    Path hook =
+        projectRoot()
+            .resolve(".git/hooks")
+            .resolve(getProjectArtifactId() + ".git-hook." + hookName + ".sh");
+    ProcessBuilder processBuilder =
+        new ProcessBuilder("bash", hook.toString()).directory(projectRoot().toFile()).inheritIO();
+    if (output != null) {
+      processBuilder.redirectErrorStream(true).redirectOutput(output.toFile());
+    }
+    Process process = processBuilder.start();
+    if (!process.waitFor(5, TimeUnit.MINUTES)) {
+      process.destroyForcibly();
+      throw new AssertionError("The " + hookName + " hook did not finish");
+    }
+    return process.exitValue();
+  }
+
+  /** Runs git, which runs the hooks itself */
+  private int runGit(Path directory, String... arguments) throws Exception {
+    List<String> command = new ArrayList<>();
+    command.add("git");
+    command.addAll(Arrays.asList(arguments));
+    ProcessBuilder processBuilder =
+        new ProcessBuilder(command).directory(directory.toFile()).inheritIO();
+    Map<String, String> environment = processBuilder.environment();
+    for (String role : new String[] {"AUTHOR", "COMMITTER"}) {
+      environment.put("GIT_" + role + "_NAME", gitIdentity().getName());
+      environment.put("GIT_" + role + "_EMAIL", gitIdentity().getEmailAddress());
+    }
+    return processBuilder.start().waitFor();
+  }
+
   private MavenExecution mavenExecution() {
     return buildMavenExecution(projectRoot().resolve(mavenModuleDirectory));
   }
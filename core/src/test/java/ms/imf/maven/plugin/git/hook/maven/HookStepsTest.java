@@ -0,0 +1,176 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.takari.maven.testing.executor.MavenRuntime;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+/**
+ * @author Réda Housni Alaoui
+ */
+public class HookStepsTest extends AbstractTest {
+
+  public HookStepsTest(MavenRuntime.MavenRuntimeBuilder mavenBuilder) throws Exception {
+    super(mavenBuilder, "hook-steps");
+  }
+
+  @Test
+  public void GIVEN_independent_steps_WHEN_running_hook_THEN_steps_should_run_concurrently()
+      throws Exception {
+    installSteps("sleep 3; echo first-output", "sleep 3; echo second-output");
+
+    long start = System.nanoTime();
+    assertThat(runPreCommit()).isZero();
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(5);
+
+    assertThat(output())
+        .contains("==> first passed", "first-output", "==> second passed", "second-output");
+  }
+
+  @Test
+  public void GIVEN_failing_step_WHEN_running_hook_THEN_other_steps_should_be_killed()
+      throws Exception {
+    installSteps("sleep 20; echo never-printed", "echo second-output; exit 5");
+
+    long start = System.nanoTime();
+    assertThat(runPreCommit()).isEqualTo(5);
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(10);
+
+    assertThat(output())
+        .contains("==> second failed with exit code 5", "second-output", "==> first cancelled")
+        .doesNotContain("never-printed");
+  }
+
+  @Test
+  public void GIVEN_step_exceeding_its_timeout_WHEN_running_hook_THEN_it_should_be_killed()
+      throws Exception {
+    installSteps("sleep 30; echo never-printed", "sleep 30", "-DfirstStepTimeout=1");
+
+    long start = System.nanoTime();
+    assertThat(runPreCommit()).isEqualTo(124);
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(10);
+
+    assertThat(output())
+        .contains("==> first timed out after 1s and was killed", "==> second cancelled")
+        .doesNotContain("never-printed");
+  }
+
+  @Test
+  public void
+      GIVEN_hook_exceeding_its_time_limits_WHEN_running_hook_THEN_it_should_warn_then_be_killed()
+          throws Exception {
+    installSteps(
+        "sleep 30; echo never-printed",
+        "sleep 30",
+        "-Dghmp.preCommitTimeBudget=1",
+        "-Dghmp.preCommitTimeout=3");
+
+    long start = System.nanoTime();
+    assertThat(runPreCommit()).isEqualTo(124);
+    assertThat(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start)).isLessThan(12);
+
+    assertThat(output())
+        .contains(
+            "The pre-commit hook is over its 1s time budget, still running",
+            "The pre-commit hook timed out after 3s and was killed")
+        .doesNotContain("never-printed");
+  }
+
+  @Test
+  public void GIVEN_step_globs_WHEN_no_staged_path_matches_THEN_only_that_step_is_skipped()
+      throws Exception {
+    installSteps("echo first-output", "echo second-output", "-DsecondStepInclude=src/*");
+
+    stage("docs/guide.md");
+    assertThat(runPreCommit()).isZero();
+    assertThat(output())
+        .contains("==> second skipped, no changed path matches src/*", "first-output")
+        .doesNotContain("second-output");
+
+    stage("src/Main.java");
+    assertThat(runPreCommit()).isZero();
+    assertThat(output()).contains("first-output", "second-output").doesNotContain("skipped");
+  }
+
+  @Test
+  public void GIVEN_hook_globs_WHEN_no_staged_path_matches_THEN_hook_is_skipped() throws Exception {
+    installSteps("echo first-output", "echo second-output", "-Dghmp.preCommitExcludes=docs/*");
+
+    stage("docs/guide.md");
+    assertThat(runPreCommit()).isZero();
+    assertThat(output())
+        .contains("Skipping the pre-commit hook, no changed path outside of docs/*")
+        .doesNotContain("first-output", "second-output");
+  }
+
+  @Test
+  public void GIVEN_recorded_runs_WHEN_running_stats_THEN_hook_and_steps_should_be_reported()
+      throws Exception {
+    installSteps("echo first-output", "exit 4");
+    assertThat(runPreCommit()).isEqualTo(4);
+
+    assertThat(new String(Files.readAllBytes(hookRuns()), StandardCharsets.UTF_8))
+        .contains(
+            "\"hook\":\"pre-commit\",\"step\":\"first\"",
+            "\"hook\":\"pre-commit\",\"step\":\"second\"",
+            "\"hook\":\"pre-commit\",\"durationMillis\"")
+        .contains("\"exitCode\":4}");
+
+    buildMavenExecution(projectRoot())
+        .execute(goalCliOption("stats"))
+        .assertErrorFreeLog()
+        .assertLogText("HOOK             STEP                       RUNS FAILED")
+        .assertLogText("pre-commit       -                             1      1")
+        .assertLogText("pre-commit       first                         1      0")
+        .assertLogText("pre-commit       second                        1      1");
+  }
+
+  private void installSteps(String firstStep, String secondStep, String... cliOptions)
+      throws Exception {
+    List<String> options = new ArrayList<>();
+    options.add("-Dghmp.hookStepsParallelism=2");
+    options.add("-DfirstStep=" + firstStep);
+    options.add("-DsecondStep=" + secondStep);
+    options.addAll(Arrays.asList(cliOptions));
+    buildMavenExecution(projectRoot())
+        .withCliOptions(options.toArray(new String[0]))
+        .execute("initialize")
+        .assertErrorFreeLog();
+  }
+
+  private void stage(String path) throws Exception {
+    Path file = projectRoot().resolve(path);
+    Files.createDirectories(file.getParent());
+    Files.write(file, path.getBytes(StandardCharsets.UTF_8));
+    jGit().add().addFilepattern(path).call();
+  }
+
+  private int runPreCommit() throws Exception {
+    Path hook = projectRoot().resolve(".git/hooks/hook-steps.git-hook.pre-commit.sh");
+    return new ProcessBuilder("bash", hook.toString())
+        .directory(projectRoot().toFile())
+        .redirectErrorStream(true)
+        .redirectOutput(outputFile().toFile())
+        .start()
+        .waitFor();
+  }
+
+  private String output() throws Exception {
+    return new String(Files.readAllBytes(outputFile()), StandardCharsets.UTF_8);
+  }
+
+  private Path hookRuns() {
+    return projectRoot().resolve(".git/git-hook-maven-plugin/telemetry/hook-runs.jsonl");
+  }
+
+  private Path outputFile() {
+    return projectRoot().resolve(".git/output");
+  }
+}
@@ -0,0 +1,119 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import org.apache.maven.model.Build;
+import org.apache.maven.model.Dependency;
+import org.apache.maven.model.Model;
+import org.apache.maven.model.Plugin;
+import org.apache.maven.project.MavenProject;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class LocalArtifactsTest {
+
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path localRepository;
+  private LocalArtifacts localArtifacts;
+
+  @Before
+  public void before() {
+    localRepository = temporaryFolder.getRoot().toPath();
+    localArtifacts = new LocalArtifacts(localRepository);
+  }
+
+  @Test
+  public void GIVEN_downloaded_artifacts_WHEN_find_missing_THEN_none_should_be_missing()
+      throws Exception {
+    install("org.example.plugins", "example-plugin", "1.0", "jar");
+    install("org.example", "library", "2.0", "jar");
+    install("org.example", "bom", "3.0", "pom");
+    MavenProject project =
+        project(
+            plugin("org.example.plugins", "example-plugin", "1.0"),
+            dependency("org.example", "library", "2.0", "jar"),
+            dependency("org.example", "bom", "3.0", "pom"),
+            dependency("org.example", "module", "1.0", "jar"));
+
+    assertThat(localArtifacts.findMissing(Arrays.asList(project, project("org.example", "module"))))
+        .isNull();
+  }
+
+  @Test
+  public void GIVEN_missing_or_unresolved_artifacts_WHEN_find_missing_THEN_they_should_be_reported()
+      throws Exception {
+    install("org.example", "library", "2.0", "pom");
+
+    assertThat(
+            localArtifacts.findMissing(
+                Collections.singletonList(
+                    project(dependency("org.example", "library", "2.0", "jar")))))
+        .isEqualTo("org.example:library:2.0");
+    assertThat(
+            localArtifacts.findMissing(
+                Collections.singletonList(
+                    project(dependency("org.example", "library", "[1.0,)", "jar")))))
+        .isEqualTo("org.example:library:[1.0,)");
+  }
+
+  private void install(String groupId, String artifactId, String version, String extension)
+      throws IOException {
+    Path directory =
+        Files.createDirectories(
+            localRepository
+                .resolve(groupId.replace('.', '/'))
+                .resolve(artifactId)
+                .resolve(version));
+    Files.createFile(directory.resolve(artifactId + "-" + version + ".pom"));
+    if (!"pom".equals(extension)) {
+      Files.createFile(directory.resolve(artifactId + "-" + version + "." + extension));
+    }
+  }
+
+  private static MavenProject project(Object... pluginsAndDependencies) {
+    MavenProject project = project("org.example", "project");
+    project.getModel().setBuild(new Build());
+    for (Object pluginOrDependency : pluginsAndDependencies) {
+      if (pluginOrDependency instanceof Plugin) {
+        project.getBuild().addPlugin((Plugin) pluginOrDependency);
+      } else {
+        project.getModel().addDependency((Dependency) pluginOrDependency);
+      }
+    }
+    return project;
+  }
+
+  private static MavenProject project(String groupId, String artifactId) {
+    Model model = new Model();
+    model.setGroupId(groupId);
+    model.setArtifactId(artifactId);
+    model.setVersion("1.0");
+    return new MavenProject(model);
+  }
+
+  private static Plugin plugin(String groupId, String artifactId, String version) {
+    Plugin plugin = new Plugin();
+    plugin.setGroupId(groupId);
+    plugin.setArtifactId(artifactId);
+    plugin.setVersion(version);
+    return plugin;
+  }
+
+  private static Dependency dependency(
+      String groupId, String artifactId, String version, String type) {
+    Dependency dependency = new Dependency();
+    dependency.setGroupId(groupId);
+    dependency.setArtifactId(artifactId);
+    dependency.setVersion(version);
+    dependency.setType(type);
+    return dependency;
+  }
+}
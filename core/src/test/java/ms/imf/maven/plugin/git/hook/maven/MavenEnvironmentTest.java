@@ -1,30 +1,42 @@
 package ms.imf.maven.plugin.git.hook.maven;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
 
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.Duration;
 import java.util.HashMap;
-import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import ms.imf.maven.plugin.git.hook.MavenGitHookException;
 import ms.imf.maven.plugin.git.hook.executable.CommandRunException;
 import ms.imf.maven.plugin.git.hook.executable.CommandRunner;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
 /**
  * @author Réda Housni Alaoui
  */
 public class MavenEnvironmentTest {
 
+  @Rule public final TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private Map<String, String> systemProperties;
+  private Map<String, String> environment;
   private TestingCommandRunner commandRunner;
   private MavenEnvironment tested;
 
   @Before
   public void before() {
     systemProperties = new HashMap<>();
+    environment = new HashMap<>();
     commandRunner = new TestingCommandRunner();
     tested = new MavenEnvironment(TestingLog::new, systemProperties::get, commandRunner);
   }
@@ -63,12 +75,148 @@ public class MavenEnvironmentTest {
     assertThat(path).isEqualTo(Paths.get("mvnDebug"));
   }
 
+  @Test
+  public void testCachedExecutableIsNotProbedAgain() throws Exception {
+    systemProperties.put("maven.home", "/opt/maven");
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("maven-executable.cache");
+    commandRunner.validExecutables.add("mvn");
+
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenExecutable(false))
+        .isEqualTo(Paths.get("mvn"));
+    assertThat(commandRunner.invocations.get()).isPositive();
+
+    // Probes of the first resolution may still be running, so count with a fresh runner
+    commandRunner = new TestingCommandRunner();
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenExecutable(false))
+        .isEqualTo(Paths.get("mvn"));
+    assertThat(commandRunner.invocations.get()).isZero();
+  }
+
+  @Test
+  public void testCachedExecutableIsKeyedByDebugFlag() throws Exception {
+    systemProperties.put("maven.home", "/opt/maven");
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("maven-executable.cache");
+    commandRunner.validExecutables.add("mvn");
+    commandRunner.validExecutables.add("mvnDebug");
+
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenExecutable(false))
+        .isEqualTo(Paths.get("mvn"));
+    assertThat(cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenExecutable(true))
+        .isEqualTo(Paths.get("mvnDebug"));
+  }
+
+  @Test
+  public void testCachedExecutableIsInvalidatedWhenExecutableChanges() throws Exception {
+    Path mavenHome = temporaryFolder.newFolder("maven").toPath();
+    Path mvn = Files.createDirectories(mavenHome.resolve("bin")).resolve("mvn");
+    Files.write(mvn, "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+    systemProperties.put("maven.home", mavenHome.toString());
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("maven-executable.cache");
+    commandRunner.validExecutables.add("mvn");
+
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenExecutable(false))
+        .isEqualTo(Paths.get("mvn"));
+
+    commandRunner.validExecutables.add(mvn.toString());
+    Files.write(mvn, "#!/bin/sh\n# upgraded".getBytes(StandardCharsets.UTF_8));
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenExecutable(false))
+        .isEqualTo(mvn);
+  }
+
+  @Test
+  public void testExecutableInputsChangeWithTheCandidatesWithoutRunningCommands() throws Exception {
+    Path mavenHome = temporaryFolder.newFolder("maven").toPath();
+    Path mvn = Files.createDirectories(mavenHome.resolve("bin")).resolve("mvn");
+    Files.write(mvn, "#!/bin/sh".getBytes(StandardCharsets.UTF_8));
+    systemProperties.put("maven.home", mavenHome.toString());
+
+    String inputs = tested.getMavenExecutableInputs(false);
+    assertThat(tested.getMavenExecutableInputs(false)).isEqualTo(inputs);
+    assertThat(tested.getMavenExecutableInputs(true)).isNotEqualTo(inputs);
+    Files.write(mvn, "#!/bin/sh\n# upgraded".getBytes(StandardCharsets.UTF_8));
+    assertThat(tested.getMavenExecutableInputs(false)).isNotEqualTo(inputs);
+    assertThat(commandRunner.invocations.get()).isZero();
+  }
+
+  @Test
+  public void testLayoutValidationDoesNotRunCommands() throws Exception {
+    Path mavenHome = temporaryFolder.newFolder("maven").toPath();
+    Path mvn = Files.createDirectories(mavenHome.resolve("bin")).resolve("mvn");
+    Files.createFile(mvn);
+    Files.createFile(
+        Files.createDirectories(mavenHome.resolve("lib")).resolve("maven-core-3.9.0.jar"));
+    systemProperties.put("maven.home", mavenHome.toString());
+
+    Path path = cachingEnvironment(null, ExecutableValidation.LAYOUT).getMavenExecutable(false);
+    assertThat(path).isEqualTo(mvn);
+    assertThat(commandRunner.invocations.get()).isZero();
+  }
+
+  @Test
+  public void testLayoutValidationRejectsExecutableWithoutMavenCore() throws Exception {
+    Path mavenHome = temporaryFolder.newFolder("maven").toPath();
+    Files.createFile(Files.createDirectories(mavenHome.resolve("bin")).resolve("mvn"));
+    Files.createDirectories(mavenHome.resolve("lib"));
+    systemProperties.put("maven.home", mavenHome.toString());
+
+    assertThatThrownBy(
+            () -> cachingEnvironment(null, ExecutableValidation.LAYOUT).getMavenExecutable(false))
+        .isInstanceOf(MavenGitHookException.class);
+  }
+
+  @Test
+  public void testMavenDaemonExecutableInMvndHome() throws Exception {
+    Path mvndHome = temporaryFolder.newFolder("mvnd").toPath();
+    Path mvnd = Files.createDirectories(mvndHome.resolve("bin")).resolve("mvnd");
+    Files.createFile(mvnd);
+    Files.createFile(
+        Files.createDirectories(mvndHome.resolve("mvn/lib")).resolve("maven-core-3.9.0.jar"));
+    environment.put("MVND_HOME", mvndHome.toString());
+
+    assertThat(cachingEnvironment(null, ExecutableValidation.LAYOUT).getMavenDaemonExecutable())
+        .contains(mvnd);
+  }
+
+  @Test
+  public void testMissingMavenDaemonIsCached() throws Exception {
+    Path cacheFile = temporaryFolder.getRoot().toPath().resolve("maven-executable.cache");
+
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenDaemonExecutable())
+        .isEmpty();
+    assertThat(commandRunner.invocations.get()).isPositive();
+
+    commandRunner = new TestingCommandRunner();
+    assertThat(
+            cachingEnvironment(cacheFile, ExecutableValidation.COMMAND).getMavenDaemonExecutable())
+        .isEmpty();
+    assertThat(commandRunner.invocations.get()).isZero();
+  }
+
+  private MavenEnvironment cachingEnvironment(Path cacheFile, ExecutableValidation validation) {
+    return new MavenEnvironment(
+        TestingLog::new,
+        systemProperties::get,
+        environment::get,
+        commandRunner,
+        cacheFile,
+        validation);
+  }
+
   private static class TestingCommandRunner implements CommandRunner {
 
-    final Set<String> validExecutables = new HashSet<>();
+    final Set<String> validExecutables = ConcurrentHashMap.newKeySet();
+    final AtomicInteger invocations = new AtomicInteger();
 
     @Override
-    public String run(Path workingDir, Map<String, String> environment, String... command) {
+    public String run(
+        Path workingDir, Map<String, String> environment, Duration timeout, String... command) {
+      invocations.incrementAndGet();
       if (validExecutables.contains(command[0])) {
         return null;
       }
@@ -0,0 +1,183 @@
+package ms.imf.maven.plugin.git.hook.maven;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import io.takari.maven.testing.executor.MavenRuntime;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.eclipse.jgit.lib.ObjectId;
+import org.eclipse.jgit.revwalk.RevCommit;
+import org.junit.Test;
+
+/**
+ * @author Réda Housni Alaoui
+ */
+public class MultiModuleTest extends AbstractTest {
+
+  private static final String GROUP_ID = "com.cosium.code.format.test";
+
+  public MultiModuleTest(MavenRuntime.MavenRuntimeBuilder mavenBuilder) throws Exception {
+    super(mavenBuilder, "multi-module");
+  }
+
+  @Test
+  public void GIVEN_affected_modules_mode_WHEN_pushing_a_module_change_THEN_only_it_is_selected()
+      throws Exception {
+    installAffectedModulesHook();
+    ObjectId remote = jGit().getRepository().resolve("HEAD");
+
+    touch("module-a/src/Source.txt");
+    RevCommit local = commit();
+
+    assertThat(runPrePush(local, remote)).isZero();
+    assertThat(affectedModules()).isEqualTo(GROUP_ID + ":module-a");
+  }
+
+  @Test
+  public void GIVEN_affected_modules_mode_WHEN_pushing_a_root_change_THEN_whole_reactor_is_built()
+      throws Exception {
+    installAffectedModulesHook();
+    ObjectId remote = jGit().getRepository().resolve("HEAD");
+
+    touch("module-a/src/Source.txt");
+    touch("pom.xml");
+    RevCommit local = commit();
+
+    assertThat(runPrePush(local, remote)).isZero();
+    assertThat(affectedModules()).isEmpty();
+  }
+
+  @Test
+  public void
+      GIVEN_affected_modules_mode_WHEN_pushing_unknown_remote_commit_THEN_whole_reactor_is_built()
+          throws Exception {
+    installAffectedModulesHook();
+
+    touch("module-b/src/Source.txt");
+    RevCommit local = commit();
+
+    assertThat(runPrePush(local, ObjectId.fromString("1234567890123456789012345678901234567890")))
+        .isZero();
+    assertThat(affectedModules()).isEmpty();
+  }
+
+  @Test
+  public void GIVEN_affected_modules_mode_WHEN_install_hooks_THEN_maven_command_selects_modules()
+      throws Exception {
+    buildMavenExecution(projectRoot())
+        .withCliOptions(
+            "-Dghmp.prePushAffectedModules=true",
+            "-Dghmp.prePushCommandMavenPrefix=true",
+            "-Dghmp.prePushHookContent=verify")
+        .execute("initialize")
+        .assertErrorFreeLog();
+
+    String hookContent = readHook();
+    assertThat(hookContent)
+        .contains(
+            "ghmp_collect_pushed_modules '' 'module-a' '"
+                + GROUP_ID
+                + ":module-a' 'module-b' '"
+                + GROUP_ID
+                + ":module-b'")
+        .contains("\"${GHMP_MAVEN_MODULE_ARGS[@]}\" verify");
+  }
+
+  @Test
+  public void GIVEN_module_step_WHEN_another_module_is_staged_THEN_step_is_skipped()
+      throws Exception {
+    installModuleStepsHook();
+
+    touch("module-b/src/Source.txt");
+    jGit().add().addFilepattern(".").call();
+
+    assertThat(runPreCommit()).isZero();
+    assertThat(projectRoot().resolve("module-a-step")).doesNotExist();
+  }
+
+  @Test
+  public void GIVEN_module_step_WHEN_its_module_is_staged_THEN_step_runs_in_the_module()
+      throws Exception {
+    installModuleStepsHook();
+
+    touch("module-a/src/Source.txt");
+    jGit().add().addFilepattern(".").call();
+
+    assertThat(runPreCommit()).isZero();
+    assertThat(
+            new String(
+                    Files.readAllBytes(projectRoot().resolve("module-a-step")),
+                    StandardCharsets.UTF_8)
+                .trim())
+        .isEqualTo(projectRoot().resolve("module-a").toRealPath().toString());
+  }
+
+  private void installModuleStepsHook() throws Exception {
+    buildMavenExecution(projectRoot()).execute("initialize").assertErrorFreeLog();
+    assertThat(new String(Files.readAllBytes(preCommitHook()), StandardCharsets.UTF_8))
+        .contains("ghmp_add_step 'module-a/check' 0 0 ghmp_step_1 'module-a/*' --");
+  }
+
+  private void installAffectedModulesHook() throws Exception {
+    buildMavenExecution(projectRoot())
+        .withCliOptions(
+            "-Dghmp.prePushAffectedModules=true",
+            "-Dghmp.prePushHookContent=echo \"$GHMP_AFFECTED_MODULES\" > affected")
+        .execute("initialize")
+        .assertErrorFreeLog();
+  }
+
+  private RevCommit commit() throws Exception {
+    return jGit()
+        .commit()
+        .setCommitter(gitIdentity())
+        .setAuthor(gitIdentity())
+        .setAll(true)
+        .setMessage("Change")
+        .call();
+  }
+
+  /** Runs the installed pre-push hook with the ref line git would give for the push */
+  private int runPrePush(ObjectId local, ObjectId remote) throws Exception {
+    Process process =
+        new ProcessBuilder("bash", prePushHook().toString(), "origin", "file:///origin")
+            .directory(projectRoot().toFile())
+            .redirectOutput(ProcessBuilder.Redirect.INHERIT)
+            .redirectError(ProcessBuilder.Redirect.INHERIT)
+            .start();
+    try (OutputStream stdin = process.getOutputStream()) {
+      String refLine =
+          "refs/heads/master " + local.name() + " refs/heads/master " + remote.name() + "\n";
+      stdin.write(refLine.getBytes(StandardCharsets.UTF_8));
+    }
+    return process.waitFor();
+  }
+
+  private int runPreCommit() throws Exception {
+    return new ProcessBuilder("bash", preCommitHook().toString())
+        .directory(projectRoot().toFile())
+        .inheritIO()
+        .start()
+        .waitFor();
+  }
+
+  private String affectedModules() throws IOException {
+    return new String(Files.readAllBytes(projectRoot().resolve("affected")), StandardCharsets.UTF_8)
+        .trim();
+  }
+
+  private String readHook() throws IOException {
+    return new String(Files.readAllBytes(prePushHook()), StandardCharsets.UTF_8);
+  }
+
+  private Path preCommitHook() {
+    return projectRoot().resolve(".git/hooks/multi-module.git-hook.pre-commit.sh");
+  }
+
+  private Path prePushHook() {
+    return projectRoot().resolve(".git/hooks/multi-module.git-hook.pre-push.sh");
+  }
+}
@@ -0,0 +1,59 @@
+package ms.imf.maven.plugin.git.hook.telemetry;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.junit.Test;
+
+public class HookRunStatisticsTest {
+
+  @Test
+  public void GIVEN_runtime_line_WHEN_parse_THEN_fields_should_be_read() {
+    HookRun run =
+        HookRun.parse(
+            "{\"time\":1700000000000,\"hook\":\"pre-commit\",\"step\":\"a \\\"b\\\" \\\\c\","
+                + "\"durationMillis\":1200,\"exitCode\":3}");
+
+    assertThat(run).isNotNull();
+    assertThat(run.time()).isEqualTo(1700000000000L);
+    assertThat(run.hook()).isEqualTo("pre-commit");
+    assertThat(run.step()).isEqualTo("a \"b\" \\c");
+    assertThat(run.durationMillis()).isEqualTo(1200);
+    assertThat(run.exitCode()).isEqualTo(3);
+  }
+
+  @Test
+  public void GIVEN_truncated_line_WHEN_parse_THEN_it_should_be_ignored() {
+    assertThat(HookRun.parse("{\"time\":1700000000000,\"hook\":\"pre-com")).isNull();
+  }
+
+  @Test
+  public void GIVEN_runs_WHEN_computing_statistics_THEN_they_should_be_grouped_by_hook_and_step() {
+    List<HookRun> runs = new ArrayList<>();
+    for (int i = 100; i >= 1; i--) {
+      runs.add(new HookRun(i, "pre-commit", null, i * 10L, i % 25 == 0 ? 1 : 0));
+    }
+    runs.addAll(
+        Arrays.asList(
+            new HookRun(0, "pre-commit", "lint", 300, 0),
+            new HookRun(0, "pre-push", null, 50, 0),
+            new HookRun(0, "pre-commit", "lint", 100, 0)));
+
+    assertThat(HookRunStatistics.of(runs))
+        .extracting(
+            HookRunStatistics::hook,
+            HookRunStatistics::step,
+            HookRunStatistics::count,
+            HookRunStatistics::failures,
+            HookRunStatistics::p50Millis,
+            HookRunStatistics::p95Millis,
+            HookRunStatistics::maxMillis)
+        .containsExactly(
+            tuple("pre-commit", null, 100, 4, 500L, 950L, 1000L),
+            tuple("pre-commit", "lint", 2, 0, 100L, 300L, 300L),
+            tuple("pre-push", null, 1, 0, 50L, 50L, 50L));
+  }
+}